@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.classlib.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.teavm.cache.ClassSnapshot;
+import org.teavm.model.ClassHolder;
+import org.teavm.parsing.ClasspathResourceMapper;
+import org.teavm.parsing.resource.ClasspathResourceReader;
+import org.teavm.parsing.resource.ResourceClassHolderMapper;
+
+/**
+ * <p>Parses all classes of a directory and writes them to {@link ClassSnapshot}, so that builds that
+ * use these classes don't have to parse them.</p>
+ */
+public final class ClassSnapshotBuilder {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private ClassSnapshotBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: classes-directory snapshot-file");
+            System.exit(1);
+        }
+        File classesDirectory = new File(args[0]);
+        File snapshotFile = new File(args[1]);
+
+        ClassLoader classLoader = new URLClassLoader(new URL[] { classesDirectory.toURI().toURL() },
+                ClassSnapshotBuilder.class.getClassLoader());
+        ClasspathResourceMapper mapper = new ClasspathResourceMapper(classLoader,
+                new ResourceClassHolderMapper(new ClasspathResourceReader(classLoader)));
+
+        List<String> classNames = new ArrayList<>();
+        collectClasses(classesDirectory, "", classNames);
+        Collections.sort(classNames);
+
+        ClassSnapshot.Builder snapshot = new ClassSnapshot.Builder();
+        int count = 0;
+        for (String rawName : classNames) {
+            String className = mapper.renameClass(rawName);
+            ClassHolder cls;
+            try {
+                cls = mapper.map(className);
+            } catch (RuntimeException e) {
+                System.err.println("Skipping class " + rawName + ": " + e.getMessage());
+                continue;
+            }
+            String hash = mapper.getContentHash(className);
+            if (cls != null && hash != null) {
+                snapshot.add(cls, hash);
+                ++count;
+            }
+        }
+
+        snapshotFile.getParentFile().mkdirs();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(snapshotFile))) {
+            snapshot.write(output);
+        }
+        System.out.println("Class snapshot with " + count + " classes written to " + snapshotFile);
+    }
+
+    private static void collectClasses(File directory, String packageName, List<String> classNames) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                collectClasses(file, packageName + name + ".", classNames);
+            } else if (name.endsWith(CLASS_SUFFIX)) {
+                classNames.add(packageName + name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            }
+        }
+    }
+}
@@ -26,22 +26,22 @@ public class InMemoryRegularMethodNodeCache implements MethodNodeCache {
     private Map<MethodReference, AsyncMethodNode> asyncCache = new HashMap<>();
 
     @Override
-    public RegularMethodNode get(MethodReference methodReference) {
+    public synchronized RegularMethodNode get(MethodReference methodReference) {
         return cache.get(methodReference);
     }
 
     @Override
-    public void store(MethodReference methodReference, RegularMethodNode node) {
+    public synchronized void store(MethodReference methodReference, RegularMethodNode node) {
         cache.put(methodReference, node);
     }
 
     @Override
-    public AsyncMethodNode getAsync(MethodReference methodReference) {
+    public synchronized AsyncMethodNode getAsync(MethodReference methodReference) {
         return asyncCache.get(methodReference);
     }
 
     @Override
-    public void storeAsync(MethodReference methodReference, AsyncMethodNode node) {
+    public synchronized void storeAsync(MethodReference methodReference, AsyncMethodNode node) {
         asyncCache.put(methodReference, node);
     }
 }
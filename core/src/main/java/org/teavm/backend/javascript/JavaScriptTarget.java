@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import org.teavm.ast.ClassNode;
 import org.teavm.ast.cache.EmptyRegularMethodNodeCache;
 import org.teavm.ast.cache.MethodNodeCache;
@@ -34,14 +35,17 @@ import org.teavm.backend.javascript.codegen.AliasProvider;
 import org.teavm.backend.javascript.codegen.DefaultAliasProvider;
 import org.teavm.backend.javascript.codegen.DefaultNamingStrategy;
 import org.teavm.backend.javascript.codegen.MinifyingAliasProvider;
+import org.teavm.backend.javascript.codegen.NamingStrategy;
 import org.teavm.backend.javascript.codegen.SourceWriter;
 import org.teavm.backend.javascript.codegen.SourceWriterBuilder;
+import org.teavm.backend.javascript.rendering.ClassFragmentCache;
 import org.teavm.backend.javascript.rendering.Renderer;
 import org.teavm.backend.javascript.rendering.RenderingContext;
 import org.teavm.backend.javascript.spi.GeneratedBy;
 import org.teavm.backend.javascript.spi.Generator;
 import org.teavm.backend.javascript.spi.InjectedBy;
 import org.teavm.backend.javascript.spi.Injector;
+import org.teavm.common.ParallelTasks;
 import org.teavm.debugging.information.DebugInformationEmitter;
 import org.teavm.debugging.information.DummyDebugInformationEmitter;
 import org.teavm.debugging.information.SourceLocation;
@@ -69,6 +73,7 @@ import org.teavm.model.instructions.RaiseInstruction;
 import org.teavm.model.instructions.StringConstantInstruction;
 import org.teavm.model.util.AsyncMethodFinder;
 import org.teavm.model.util.ProgramUtils;
+import org.teavm.vm.BuildStatistics;
 import org.teavm.vm.BuildTarget;
 import org.teavm.vm.RenderingException;
 import org.teavm.vm.TeaVMEntryPoint;
@@ -80,21 +85,31 @@ import org.teavm.vm.spi.TeaVMHostExtension;
 public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
     private TeaVMTargetController controller;
     private boolean minifying = true;
+    private boolean nativeStrings;
+    private boolean longAsBigInt;
+    private boolean lazyMetadata;
     private final Map<MethodReference, Generator> methodGenerators = new HashMap<>();
     private final Map<MethodReference, Injector> methodInjectors = new HashMap<>();
     private final List<RendererListener> rendererListeners = new ArrayList<>();
     private DebugInformationEmitter debugEmitter;
     private MethodNodeCache astCache = new EmptyRegularMethodNodeCache();
+    private ClassFragmentCache fragmentCache;
     private final Set<MethodReference> asyncMethods = new HashSet<>();
     private final Set<MethodReference> asyncFamilyMethods = new HashSet<>();
 
     @Override
     public List<ClassHolderTransformer> getTransformers() {
+        if (nativeStrings) {
+            return Collections.singletonList(new NativeStringDependencyListener());
+        }
         return Collections.emptyList();
     }
 
     @Override
     public List<DependencyListener> getDependencyListeners() {
+        if (nativeStrings) {
+            return Collections.singletonList(new NativeStringDependencyListener());
+        }
         return Collections.emptyList();
     }
 
@@ -138,6 +153,54 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         this.minifying = minifying;
     }
 
+    public boolean isNativeStrings() {
+        return nativeStrings;
+    }
+
+    /**
+     * <p>Specifies whether <code>java.lang.String</code> is represented by JavaScript primitive strings.
+     * Strings are then passed between Java and JavaScript without conversion, and methods like
+     * <code>charAt</code>, <code>length</code>, <code>hashCode</code>, <code>equals</code>,
+     * <code>substring</code> and <code>indexOf</code> are performed by the JavaScript engine.</p>
+     *
+     * <p>Since equal strings can't be told apart, <code>==</code> compares strings by value, and
+     * identity hash code and monitor of a string are shared by all strings equal to it. Methods of
+     * strings are installed on <code>String.prototype</code>.</p>
+     */
+    public void setNativeStrings(boolean nativeStrings) {
+        this.nativeStrings = nativeStrings;
+    }
+
+    public boolean isLongAsBigInt() {
+        return longAsBigInt;
+    }
+
+    /**
+     * <p>Specifies whether <code>long</code> values are represented by JavaScript <code>BigInt</code> values
+     * and <code>long[]</code> arrays by <code>BigInt64Array</code>. Arithmetic is then performed by the
+     * JavaScript engine instead of runtime functions that allocate an object for each result.
+     * The generated code requires an ECMAScript 2020 environment.</p>
+     */
+    public void setLongAsBigInt(boolean longAsBigInt) {
+        this.longAsBigInt = longAsBigInt;
+    }
+
+    public boolean isLazyMetadata() {
+        return lazyMetadata;
+    }
+
+    /**
+     * <p>Specifies whether class metadata, prototypes and virtual methods are set up when a class is first
+     * instantiated or reflectively accessed rather than when the script is loaded. This reduces start-up time
+     * of large applications, since most classes are not used right after start. The generated code
+     * requires an ECMAScript 2015 environment, as prototypes of classes that are not set up yet are proxies.
+     * Since an object may keep such proxy as its prototype, <code>instanceof</code> expressions are evaluated
+     * by runtime rather than by native operator.</p>
+     */
+    public void setLazyMetadata(boolean lazyMetadata) {
+        this.lazyMetadata = lazyMetadata;
+    }
+
     public MethodNodeCache getAstCache() {
         return astCache;
     }
@@ -146,6 +209,19 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         this.astCache = methodAstCache;
     }
 
+    public ClassFragmentCache getFragmentCache() {
+        return fragmentCache;
+    }
+
+    /**
+     * <p>Sets cache of rendered code that is used in incremental mode. Rendered code can't be reused by
+     * minified builds, since names depend on the whole program, and by builds that emit debug information,
+     * since it refers to positions in output, so these builds render everything.</p>
+     */
+    public void setFragmentCache(ClassFragmentCache fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
     public DebugInformationEmitter getDebugEmitter() {
         return debugEmitter;
     }
@@ -179,6 +255,12 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         internDep.use();
 
         dependencyChecker.linkMethod(new MethodReference(String.class, "length", int.class), null).use();
+        if (nativeStrings) {
+            Generator generator = new NativeStringGenerator();
+            for (MethodReference method : NativeStringGenerator.METHODS) {
+                methodGenerators.put(method, generator);
+            }
+        }
         dependencyChecker.linkMethod(new MethodReference(Object.class, "clone", Object.class), null).use();
         dependencyChecker.linkMethod(new MethodReference(Thread.class, "currentThread", Thread.class), null).use();
         dependencyChecker.linkMethod(new MethodReference(Thread.class, "getMainThread", Thread.class), null).use();
@@ -216,13 +298,29 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
     }
 
     private void emit(ListableClassHolderSource classes, Writer writer, BuildTarget target) {
-        List<ClassNode> clsNodes = modelToAst(classes);
+        BuildStatistics statistics = controller.getStatistics();
+        List<ClassNode> clsNodes;
+        try (BuildStatistics.Timer timer = statistics != null ? statistics.startPhase("decompilation") : null) {
+            clsNodes = modelToAst(classes);
+        }
         if (controller.wasCancelled()) {
             return;
         }
 
-        AliasProvider aliasProvider = minifying ? new MinifyingAliasProvider() : new DefaultAliasProvider();
-        DefaultNamingStrategy naming = new DefaultNamingStrategy(aliasProvider, controller.getUnprocessedClassSource());
+        AliasProvider aliasProvider = minifying ? new MinifyingAliasProvider(nativeStrings)
+                : new DefaultAliasProvider();
+        DefaultNamingStrategy defaultNaming = new DefaultNamingStrategy(aliasProvider,
+                controller.getUnprocessedClassSource());
+        NamingStrategy naming = defaultNaming;
+        ListableClassReaderSource renderedClasses = classes;
+        ClassFragmentCache fragmentCacheToUse = null;
+        if (fragmentCache != null && controller.isIncremental() && !minifying && debugEmitter == null) {
+            fragmentCacheToUse = fragmentCache;
+            fragmentCacheToUse.startBuild(defaultNaming, classes, asyncMethods, asyncFamilyMethods,
+                    methodInjectors.keySet(), controller.getProperties());
+            naming = fragmentCacheToUse.getNaming();
+            renderedClasses = fragmentCacheToUse.getClassSource();
+        }
         SourceWriterBuilder builder = new SourceWriterBuilder(naming);
         builder.setMinified(minifying);
         SourceWriter sourceWriter = builder.build(writer);
@@ -231,13 +329,17 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         if (debugEmitterToUse == null) {
             debugEmitterToUse = new DummyDebugInformationEmitter();
         }
-        RenderingContext renderingContext = new RenderingContext(debugEmitterToUse, classes,
+        RenderingContext renderingContext = new RenderingContext(debugEmitterToUse, renderedClasses,
                 controller.getClassLoader(), controller.getServices(), controller.getProperties(), naming);
         renderingContext.setMinifying(minifying);
+        renderingContext.setLongAsBigInt(longAsBigInt);
+        renderingContext.setLazyMetadata(lazyMetadata);
+        renderingContext.setNativeStrings(nativeStrings);
         Renderer renderer = new Renderer(sourceWriter, asyncMethods, asyncFamilyMethods,
                 controller.getDiagnostics(), renderingContext);
         renderer.setProperties(controller.getProperties());
         renderer.setMinifying(minifying);
+        renderer.setFragmentCache(fragmentCacheToUse);
         if (debugEmitter != null) {
             for (String className : classes.getClassNames()) {
                 ClassHolder cls = classes.get(className);
@@ -256,7 +358,7 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         for (Map.Entry<MethodReference, Injector> entry : methodInjectors.entrySet()) {
             renderingContext.addInjector(entry.getKey(), entry.getValue());
         }
-        try {
+        try (BuildStatistics.Timer timer = statistics != null ? statistics.startPhase("rendering") : null) {
             for (RendererListener listener : rendererListeners) {
                 listener.begin(renderer, target);
             }
@@ -281,6 +383,10 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         } catch (IOException e) {
             throw new RenderingException("IO Error occured", e);
         }
+        if (statistics != null && fragmentCacheToUse != null) {
+            statistics.setCounter("fragmentCache.reused", fragmentCacheToUse.getReusedCount());
+            statistics.setCounter("fragmentCache.rendered", fragmentCacheToUse.getRenderedCount());
+        }
     }
 
     private List<ClassNode> modelToAst(ListableClassHolderSource classes) {
@@ -290,6 +396,35 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         asyncMethods.addAll(asyncFinder.getAsyncMethods());
         asyncFamilyMethods.addAll(asyncFinder.getAsyncFamilyMethods());
 
+        List<String> classOrder = createDecompiler(classes).getClassOrdering(classes.getClassNames());
+        for (String className : classOrder) {
+            ClassHolder cls = classes.get(className);
+            for (MethodHolder method : cls.getMethods()) {
+                preprocessNativeMethod(method);
+            }
+            if (controller.wasCancelled()) {
+                return new ArrayList<>();
+            }
+        }
+
+        // Decompiler keeps state of a method being decompiled, so each thread needs its own instance
+        ThreadLocal<Decompiler> decompilers = ThreadLocal.withInitial(() -> createDecompiler(classes));
+        Map<String, ClassNode> classNodeMap = new ConcurrentHashMap<>();
+        ParallelTasks.forEach(controller.getThreadCount(), classOrder,
+                className -> classNodeMap.put(className, decompilers.get().decompile(classes.get(className))),
+                completed -> !controller.wasCancelled());
+
+        List<ClassNode> classNodes = new ArrayList<>();
+        for (String className : classOrder) {
+            ClassNode classNode = classNodeMap.get(className);
+            if (classNode != null) {
+                classNodes.add(classNode);
+            }
+        }
+        return classNodes;
+    }
+
+    private Decompiler createDecompiler(ListableClassHolderSource classes) {
         Decompiler decompiler = new Decompiler(classes, controller.getClassLoader(), asyncMethods, asyncFamilyMethods);
         decompiler.setRegularMethodCache(controller.isIncremental() ? astCache : null);
 
@@ -299,19 +434,7 @@ public class JavaScriptTarget implements TeaVMTarget, TeaVMJavaScriptHost {
         for (MethodReference injectedMethod : methodInjectors.keySet()) {
             decompiler.addMethodToSkip(injectedMethod);
         }
-        List<String> classOrder = decompiler.getClassOrdering(classes.getClassNames());
-        List<ClassNode> classNodes = new ArrayList<>();
-        for (String className : classOrder) {
-            ClassHolder cls = classes.get(className);
-            for (MethodHolder method : cls.getMethods()) {
-                preprocessNativeMethod(method);
-                if (controller.wasCancelled()) {
-                    break;
-                }
-            }
-            classNodes.add(decompiler.decompile(cls));
-        }
-        return classNodes;
+        return decompiler;
     }
 
     private void preprocessNativeMethod(MethodHolder method) {
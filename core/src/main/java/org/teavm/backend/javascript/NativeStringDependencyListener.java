@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import org.teavm.dependency.AbstractDependencyListener;
+import org.teavm.dependency.DependencyAgent;
+import org.teavm.dependency.MethodDependency;
+import org.teavm.diagnostics.Diagnostics;
+import org.teavm.model.CallLocation;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderTransformer;
+import org.teavm.model.ClassReaderSource;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>Replaces bodies of methods generated by {@link NativeStringGenerator} before dependency analysis,
+ * so that they are neither analyzed nor inlined, and reports dependencies of the generated code instead.</p>
+ */
+class NativeStringDependencyListener extends AbstractDependencyListener implements ClassHolderTransformer {
+    @Override
+    public void transformClass(ClassHolder cls, ClassReaderSource innerSource, Diagnostics diagnostics) {
+        for (MethodHolder method : cls.getMethods()) {
+            if (NativeStringGenerator.METHODS.contains(method.getReference())) {
+                method.setProgram(null);
+                method.getModifiers().add(ElementModifier.NATIVE);
+            }
+        }
+    }
+
+    @Override
+    public void methodReached(DependencyAgent agent, MethodDependency method, CallLocation location) {
+        MethodReference ref = method.getReference();
+        if (ref.equals(NativeStringGenerator.CHAR_AT)) {
+            agent.linkMethod(NativeStringGenerator.STRING_INDEX_OUT_OF_BOUNDS, location).use();
+        } else if (ref.equals(NativeStringGenerator.SUBSTRING)
+                || ref.equals(NativeStringGenerator.SUBSTRING_FROM)) {
+            agent.linkMethod(NativeStringGenerator.INDEX_OUT_OF_BOUNDS, location).use();
+            method.getResult().propagate(agent.getType("java.lang.String"));
+        } else if (ref.equals(NativeStringGenerator.GET_CLASS)) {
+            agent.linkMethod(NativeStringGenerator.CLASS_FOR_PLATFORM_CLASS, location).use();
+            method.getResult().propagate(agent.getType("java.lang.Class"));
+        }
+    }
+}
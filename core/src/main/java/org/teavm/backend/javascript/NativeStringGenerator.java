@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.teavm.backend.javascript.codegen.SourceWriter;
+import org.teavm.backend.javascript.spi.Generator;
+import org.teavm.backend.javascript.spi.GeneratorContext;
+import org.teavm.model.FieldReference;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ValueType;
+
+/**
+ * <p>Generates methods of <code>java.lang.String</code>, as well as methods of <code>java.lang.Object</code>
+ * and <code>java.lang.Class</code> that depend on representation of strings, when strings are represented
+ * by JavaScript primitive strings.</p>
+ */
+class NativeStringGenerator implements Generator {
+    static final MethodReference LENGTH = new MethodReference(String.class, "length", int.class);
+    static final MethodReference IS_EMPTY = new MethodReference(String.class, "isEmpty", boolean.class);
+    static final MethodReference CHAR_AT = new MethodReference(String.class, "charAt", int.class, char.class);
+    static final MethodReference HASH_CODE = new MethodReference(String.class, "hashCode", int.class);
+    static final MethodReference EQUALS = new MethodReference(String.class, "equals", Object.class,
+            boolean.class);
+    static final MethodReference SUBSTRING = new MethodReference(String.class, "substring", int.class,
+            int.class, String.class);
+    static final MethodReference SUBSTRING_FROM = new MethodReference(String.class, "substring", int.class,
+            String.class);
+    static final MethodReference INDEX_OF_CHAR = new MethodReference(String.class, "indexOf", int.class,
+            int.class);
+    static final MethodReference INDEX_OF_CHAR_FROM = new MethodReference(String.class, "indexOf", int.class,
+            int.class, int.class);
+    static final MethodReference INDEX_OF = new MethodReference(String.class, "indexOf", String.class,
+            int.class);
+    static final MethodReference INDEX_OF_FROM = new MethodReference(String.class, "indexOf", String.class,
+            int.class, int.class);
+    static final MethodReference GET_CLASS = new MethodReference(Object.class, "getClass", Class.class);
+    static final MethodReference IS_INSTANCE = new MethodReference(Class.class, "isInstance", Object.class,
+            boolean.class);
+    static final Set<MethodReference> METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            LENGTH, IS_EMPTY, CHAR_AT, HASH_CODE, EQUALS, SUBSTRING, SUBSTRING_FROM, INDEX_OF_CHAR,
+            INDEX_OF_CHAR_FROM, INDEX_OF, INDEX_OF_FROM, GET_CLASS, IS_INSTANCE)));
+
+    static final MethodReference STRING_INDEX_OUT_OF_BOUNDS = new MethodReference(
+            StringIndexOutOfBoundsException.class, "<init>", void.class);
+    static final MethodReference INDEX_OUT_OF_BOUNDS = new MethodReference(IndexOutOfBoundsException.class,
+            "<init>", void.class);
+    static final MethodReference CLASS_FOR_PLATFORM_CLASS = new MethodReference(Class.class.getName(), "getClass",
+            ValueType.object("org.teavm.platform.PlatformClass"), ValueType.parse(Class.class));
+    private static final FieldReference PLATFORM_CLASS = new FieldReference(Class.class.getName(),
+            "platformClass");
+
+    @Override
+    public void generate(GeneratorContext context, SourceWriter writer, MethodReference methodRef)
+            throws IOException {
+        String self = context.getParameterName(0);
+        if (methodRef.equals(LENGTH)) {
+            writer.append("return " + self + ".length;").softNewLine();
+        } else if (methodRef.equals(IS_EMPTY)) {
+            writer.append("return " + self + ".length === 0 ? 1 : 0;").softNewLine();
+        } else if (methodRef.equals(CHAR_AT)) {
+            generateCharAt(context, writer);
+        } else if (methodRef.equals(HASH_CODE)) {
+            generateHashCode(context, writer);
+        } else if (methodRef.equals(EQUALS)) {
+            writer.append("return " + self + " === " + context.getParameterName(1) + " ? 1 : 0;").softNewLine();
+        } else if (methodRef.equals(SUBSTRING)) {
+            generateSubstring(context, writer, context.getParameterName(2));
+        } else if (methodRef.equals(SUBSTRING_FROM)) {
+            generateSubstring(context, writer, self + ".length");
+        } else if (methodRef.equals(INDEX_OF_CHAR)) {
+            generateIndexOfChar(context, writer, "0");
+        } else if (methodRef.equals(INDEX_OF_CHAR_FROM)) {
+            generateIndexOfChar(context, writer, context.getParameterName(2));
+        } else if (methodRef.equals(INDEX_OF)) {
+            writer.append("return " + self + ".indexOf(" + context.getParameterName(1) + ");").softNewLine();
+        } else if (methodRef.equals(INDEX_OF_FROM)) {
+            writer.append("return " + self + ".indexOf(" + context.getParameterName(1) + ", "
+                    + context.getParameterName(2) + ");").softNewLine();
+        } else if (methodRef.equals(GET_CLASS)) {
+            writer.append("return ").appendMethodBody(CLASS_FOR_PLATFORM_CLASS).append("(typeof " + self
+                    + " === \"string\" ? ").appendClass("java.lang.String").append(" : " + self
+                    + ".constructor);").softNewLine();
+        } else if (methodRef.equals(IS_INSTANCE)) {
+            writer.append("return ").appendFunction("$rt_isInstance").append("(" + context.getParameterName(1)
+                    + ", " + self + ".").appendField(PLATFORM_CLASS).append(") ? 1 : 0;").softNewLine();
+        }
+    }
+
+    private void generateCharAt(GeneratorContext context, SourceWriter writer) throws IOException {
+        String self = context.getParameterName(0);
+        String index = context.getParameterName(1);
+        writer.append("if (" + index + " < 0 || " + index + " >= " + self + ".length) {").indent().softNewLine();
+        generateThrow(writer, STRING_INDEX_OUT_OF_BOUNDS);
+        writer.outdent().append("}").softNewLine();
+        writer.append("return " + self + ".charCodeAt(" + index + ");").softNewLine();
+    }
+
+    private void generateHashCode(GeneratorContext context, SourceWriter writer) throws IOException {
+        String self = context.getParameterName(0);
+        writer.append("var hash = 0;").softNewLine();
+        writer.append("for (var i = 0; i < " + self + ".length; i = (i + 1) | 0) {").indent().softNewLine();
+        writer.append("hash = (31 * hash + " + self + ".charCodeAt(i)) | 0;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return hash;").softNewLine();
+    }
+
+    private void generateSubstring(GeneratorContext context, SourceWriter writer, String end) throws IOException {
+        String self = context.getParameterName(0);
+        String begin = context.getParameterName(1);
+        writer.append("if (" + begin + " < 0 || " + begin + " > " + end + " || " + end + " > " + self
+                + ".length) {").indent().softNewLine();
+        generateThrow(writer, INDEX_OUT_OF_BOUNDS);
+        writer.outdent().append("}").softNewLine();
+        writer.append("return " + self + ".substring(" + begin + ", " + end + ");").softNewLine();
+    }
+
+    private void generateIndexOfChar(GeneratorContext context, SourceWriter writer, String from)
+            throws IOException {
+        String self = context.getParameterName(0);
+        String ch = context.getParameterName(1);
+        writer.append("if (" + ch + " < 0 || " + ch + " > 0x10FFFF) {").indent().softNewLine();
+        writer.append("return -1;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return " + self + ".indexOf(" + ch + " < 0x10000 ? String.fromCharCode(" + ch
+                + ") : String.fromCodePoint(" + ch + "), " + from + ");").softNewLine();
+    }
+
+    private void generateThrow(SourceWriter writer, MethodReference constructor) throws IOException {
+        writer.appendFunction("$rt_throw").append("(").append(writer.getNaming().getNameForInit(constructor))
+                .append("());").softNewLine();
+    }
+}
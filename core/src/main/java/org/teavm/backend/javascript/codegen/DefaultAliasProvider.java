@@ -15,18 +15,39 @@
  */
 package org.teavm.backend.javascript.codegen;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 import org.teavm.model.FieldReference;
 import org.teavm.model.MethodDescriptor;
 import org.teavm.model.MethodReference;
 
 public class DefaultAliasProvider implements AliasProvider {
-    private final Map<String, String> classAliases = new HashMap<>();
-    private final Set<String> knownAliases = new HashSet<>();
-    private final Set<String> knownVirtualAliases = new HashSet<>();
+    private final LayeredMap<String, String> classAliases;
+    private final LayeredMap<String, Boolean> knownAliases;
+    private final LayeredMap<String, Boolean> knownVirtualAliases;
+
+    public DefaultAliasProvider() {
+        this(new LayeredMap<>(), new LayeredMap<>(), new LayeredMap<>());
+    }
+
+    private DefaultAliasProvider(LayeredMap<String, String> classAliases, LayeredMap<String, Boolean> knownAliases,
+            LayeredMap<String, Boolean> knownVirtualAliases) {
+        this.classAliases = classAliases;
+        this.knownAliases = knownAliases;
+        this.knownVirtualAliases = knownVirtualAliases;
+    }
+
+    /**
+     * Creates provider that gives the same aliases as this one would, but does not mark them as used in this
+     * provider until {@link #commit()} is called.
+     */
+    DefaultAliasProvider fork() {
+        return new DefaultAliasProvider(classAliases.fork(), knownAliases.fork(), knownVirtualAliases.fork());
+    }
+
+    void commit() {
+        classAliases.commit();
+        knownAliases.commit();
+        knownVirtualAliases.commit();
+    }
 
     @Override
     public String getClassAlias(String cls) {
@@ -100,12 +121,13 @@ public class DefaultAliasProvider implements AliasProvider {
         return name;
     }
 
-    private String makeUnique(Set<String> knowAliases, String alias) {
+    private String makeUnique(LayeredMap<String, Boolean> knowAliases, String alias) {
         String uniqueAlias = alias;
         int index = 1;
-        while (!knowAliases.add(uniqueAlias)) {
+        while (knowAliases.containsKey(uniqueAlias)) {
             uniqueAlias = alias + index++;
         }
+        knowAliases.put(uniqueAlias, true);
         return uniqueAlias;
     }
 }
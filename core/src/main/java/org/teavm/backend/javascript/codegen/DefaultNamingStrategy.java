@@ -15,8 +15,6 @@
  */
 package org.teavm.backend.javascript.codegen;
 
-import java.util.HashMap;
-import java.util.Map;
 import org.teavm.model.AccessLevel;
 import org.teavm.model.ClassReader;
 import org.teavm.model.ClassReaderSource;
@@ -28,16 +26,67 @@ import org.teavm.model.MethodReference;
 public class DefaultNamingStrategy implements NamingStrategy {
     private final AliasProvider aliasProvider;
     private final ClassReaderSource classSource;
-    private final Map<String, String> aliases = new HashMap<>();
-    private final Map<String, String> privateAliases = new HashMap<>();
-    private final Map<String, String> classAliases = new HashMap<>();
-    private final Map<String, String> fieldAliases = new HashMap<>();
-    private final Map<String, String> staticFieldAliases = new HashMap<>();
-    private final Map<String, String> functionAliases = new HashMap<>();
+    private final LayeredMap<String, String> aliases;
+    private final LayeredMap<String, String> privateAliases;
+    private final LayeredMap<String, String> classAliases;
+    private final LayeredMap<String, String> fieldAliases;
+    private final LayeredMap<String, String> staticFieldAliases;
+    private final LayeredMap<String, String> functionAliases;
+    private final DefaultNamingStrategy parent;
 
     public DefaultNamingStrategy(AliasProvider aliasProvider, ClassReaderSource classSource) {
         this.aliasProvider = aliasProvider;
         this.classSource = classSource;
+        aliases = new LayeredMap<>();
+        privateAliases = new LayeredMap<>();
+        classAliases = new LayeredMap<>();
+        fieldAliases = new LayeredMap<>();
+        staticFieldAliases = new LayeredMap<>();
+        functionAliases = new LayeredMap<>();
+        parent = null;
+    }
+
+    private DefaultNamingStrategy(DefaultNamingStrategy parent) {
+        aliasProvider = ((DefaultAliasProvider) parent.aliasProvider).fork();
+        classSource = parent.classSource;
+        aliases = parent.aliases.fork();
+        privateAliases = parent.privateAliases.fork();
+        classAliases = parent.classAliases.fork();
+        fieldAliases = parent.fieldAliases.fork();
+        staticFieldAliases = parent.staticFieldAliases.fork();
+        functionAliases = parent.functionAliases.fork();
+        this.parent = parent;
+    }
+
+    /**
+     * <p>Creates naming strategy that gives the same names as this one would, but does not change this strategy
+     * until {@link #commit()} is called. Allows to check which names a sequence of requests would get
+     * and to keep them only if all of them are as expected.</p>
+     *
+     * <p>Only supported with {@link DefaultAliasProvider}.</p>
+     */
+    public DefaultNamingStrategy fork() {
+        if (!(aliasProvider instanceof DefaultAliasProvider)) {
+            throw new UnsupportedOperationException("Can't fork naming with alias provider "
+                    + aliasProvider.getClass().getName());
+        }
+        return new DefaultNamingStrategy(this);
+    }
+
+    /**
+     * Makes names given by this fork visible in the strategy it was forked from.
+     */
+    public void commit() {
+        if (parent == null) {
+            throw new IllegalStateException("Naming strategy is not a fork");
+        }
+        ((DefaultAliasProvider) aliasProvider).commit();
+        aliases.commit();
+        privateAliases.commit();
+        classAliases.commit();
+        fieldAliases.commit();
+        staticFieldAliases.commit();
+        functionAliases.commit();
     }
 
     @Override
@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.codegen;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Map of names that can be forked. Fork sees all entries of its parent, but keeps new entries to itself
+ * until {@link #commit()} is called.
+ */
+final class LayeredMap<K, V> {
+    private final LayeredMap<K, V> parent;
+    private final Map<K, V> entries = new HashMap<>();
+
+    LayeredMap() {
+        this(null);
+    }
+
+    private LayeredMap(LayeredMap<K, V> parent) {
+        this.parent = parent;
+    }
+
+    V get(K key) {
+        V value = entries.get(key);
+        if (value == null && parent != null) {
+            value = parent.get(key);
+        }
+        return value;
+    }
+
+    boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    V computeIfAbsent(K key, Function<K, V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+    LayeredMap<K, V> fork() {
+        return new LayeredMap<>(this);
+    }
+
+    void commit() {
+        parent.entries.putAll(entries);
+        entries.clear();
+    }
+}
@@ -28,16 +28,37 @@ public class MinifyingAliasProvider implements AliasProvider {
     private static final String startLetters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
     private static final String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
     private static final String startVirtualLetters = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final Set<String> stringMembers = new HashSet<>(Arrays.asList("anchor", "at", "big", "blink",
+            "bold", "charAt", "charCodeAt", "codePointAt", "concat", "constructor", "endsWith", "fixed",
+            "fontcolor", "fontsize", "includes", "indexOf", "isWellFormed", "italics", "lastIndexOf", "length",
+            "link", "localeCompare", "match", "matchAll", "normalize", "padEnd", "padStart", "repeat", "replace",
+            "replaceAll", "search", "slice", "small", "split", "startsWith", "strike", "sub", "substr",
+            "substring", "sup", "toLocaleLowerCase", "toLocaleUpperCase", "toLowerCase", "toUpperCase",
+            "toWellFormed", "trim", "trimEnd", "trimLeft", "trimRight", "trimStart", "hasOwnProperty",
+            "isPrototypeOf", "propertyIsEnumerable", "toLocaleString", "toString", "valueOf"));
+    private final boolean nativeStrings;
     private int lastSuffix;
     private int lastVirtual;
     private final Set<String> usedAliases = new HashSet<>();
 
+    public MinifyingAliasProvider() {
+        this(false);
+    }
+
+    /**
+     * @param nativeStrings whether methods and fields are also installed on <code>String.prototype</code>,
+     * so that their aliases must not hide members of JavaScript strings.
+     */
+    public MinifyingAliasProvider(boolean nativeStrings) {
+        this.nativeStrings = nativeStrings;
+    }
+
     @Override
     public String getFieldAlias(FieldReference field) {
         String result;
         do {
             result = getNewAlias(lastVirtual++, startVirtualLetters);
-        } while (!usedAliases.add(result) || keywords.contains(result));
+        } while (!usedAliases.add(result) || keywords.contains(result) || isStringMember(result));
         return result;
     }
 
@@ -60,7 +81,7 @@ public class MinifyingAliasProvider implements AliasProvider {
         String result;
         do {
             result = getNewAlias(lastVirtual++, startVirtualLetters);
-        } while (!usedAliases.add(result) || keywords.contains(result));
+        } while (!usedAliases.add(result) || keywords.contains(result) || isStringMember(result));
         return result;
     }
 
@@ -74,6 +95,10 @@ public class MinifyingAliasProvider implements AliasProvider {
         return getNewAlias(lastSuffix++, startLetters);
     }
 
+    private boolean isStringMember(String alias) {
+        return nativeStrings && stringMembers.contains(alias);
+    }
+
     private String getNewAlias(int index, String startLetters) {
         StringBuilder sb = new StringBuilder();
         sb.append(startLetters.charAt(index % startLetters.length()));
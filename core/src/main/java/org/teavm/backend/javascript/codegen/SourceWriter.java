@@ -30,6 +30,7 @@ public class SourceWriter implements Appendable, LocationProvider {
     private final int lineWidth;
     private int column;
     private int line;
+    private StringBuilder capturedText;
 
     SourceWriter(NamingStrategy naming, Appendable innerWriter, int lineWidth) {
         this.naming = naming;
@@ -57,7 +58,7 @@ public class SourceWriter implements Appendable, LocationProvider {
     @Override
     public SourceWriter append(char value) throws IOException {
         appendIndent();
-        innerWriter.append(value);
+        write(value);
         if (value == '\n') {
             newLine();
         } else {
@@ -92,7 +93,7 @@ public class SourceWriter implements Appendable, LocationProvider {
         }
         appendIndent();
         column += end - start;
-        innerWriter.append(csq, start, end);
+        write(csq, start, end);
     }
 
     public SourceWriter appendClass(String cls) throws NamingException, IOException {
@@ -147,7 +148,7 @@ public class SourceWriter implements Appendable, LocationProvider {
         }
         if (lineStart) {
             for (int i = 0; i < indentSize; ++i) {
-                innerWriter.append("    ");
+                write("    ");
                 column += 4;
             }
             lineStart = false;
@@ -155,7 +156,7 @@ public class SourceWriter implements Appendable, LocationProvider {
     }
 
     public SourceWriter newLine() throws IOException {
-        innerWriter.append('\n');
+        write('\n');
         column = 0;
         ++line;
         lineStart = true;
@@ -167,7 +168,7 @@ public class SourceWriter implements Appendable, LocationProvider {
             newLine();
         } else {
             if (!minified) {
-                innerWriter.append(' ');
+                write(' ');
                 column++;
             }
         }
@@ -183,7 +184,7 @@ public class SourceWriter implements Appendable, LocationProvider {
 
     public SourceWriter softNewLine() throws IOException {
         if (!minified) {
-            innerWriter.append('\n');
+            write('\n');
             column = 0;
             ++line;
             lineStart = true;
@@ -201,6 +202,43 @@ public class SourceWriter implements Appendable, LocationProvider {
         return this;
     }
 
+    /**
+     * <p>Starts collecting text written to this writer, in addition to writing it to the underlying
+     * output.</p>
+     */
+    public void startCapture() {
+        capturedText = new StringBuilder();
+    }
+
+    /**
+     * <p>Stops collecting text started by {@link #startCapture()}.</p>
+     *
+     * @return text written since capture was started.
+     */
+    public String finishCapture() {
+        String result = capturedText.toString();
+        capturedText = null;
+        return result;
+    }
+
+    private void write(char value) throws IOException {
+        innerWriter.append(value);
+        if (capturedText != null) {
+            capturedText.append(value);
+        }
+    }
+
+    private void write(CharSequence csq) throws IOException {
+        write(csq, 0, csq.length());
+    }
+
+    private void write(CharSequence csq, int start, int end) throws IOException {
+        innerWriter.append(csq, start, end);
+        if (capturedText != null) {
+            capturedText.append(csq, start, end);
+        }
+    }
+
     public NamingStrategy getNaming() {
         return naming;
     }
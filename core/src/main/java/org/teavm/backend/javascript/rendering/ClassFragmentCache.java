@@ -0,0 +1,378 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.rendering;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.teavm.ast.ClassNode;
+import org.teavm.ast.MethodNode;
+import org.teavm.ast.NativeMethodNode;
+import org.teavm.backend.javascript.codegen.DefaultNamingStrategy;
+import org.teavm.backend.javascript.codegen.NamingException;
+import org.teavm.backend.javascript.codegen.NamingStrategy;
+import org.teavm.backend.javascript.codegen.SourceWriter;
+import org.teavm.model.ClassReader;
+import org.teavm.model.FieldReader;
+import org.teavm.model.FieldReference;
+import org.teavm.model.ListableClassReaderSource;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodReader;
+import org.teavm.model.MethodReference;
+
+/**
+ * <p>Keeps JavaScript rendered for method bodies of each class between builds, so that classes that did not
+ * change are copied to output instead of being rendered again. Cache should be used along with AST cache
+ * that outlives builds, since rendered code is only reused for exactly the same method nodes.</p>
+ *
+ * <p>Besides method nodes, rendered code depends on names and string pool indexes given to entities
+ * it refers to, which depend on the order in which they were requested by all classes rendered before.
+ * So cache records these requests and replays them when reusing code. Code is reused only when
+ * replayed requests get the same results. Requests are first checked without changing naming and string pool,
+ * and only then applied, which leaves them in the same state as rendering would. For the same reason cache
+ * records classes that code rendering looked up and checks that their members and modifiers did not change.</p>
+ *
+ * <p>Classes with methods implemented by generators are always rendered, since generators can produce
+ * code depending on whole program. Code produced by injectors is expected to depend only on the invocation
+ * and on classes injector looks up. Any change of async methods, injectors or properties drops the whole
+ * cache.</p>
+ */
+public class ClassFragmentCache {
+    private Map<String, Fragment> fragments = new HashMap<>();
+    private Set<MethodReference> asyncMethods;
+    private Set<MethodReference> asyncFamilyMethods;
+    private Set<MethodReference> injectedMethods;
+    private Map<Object, Object> properties;
+    private RecordingNamingStrategy naming;
+    private RecordingClassSource classSource;
+    private final Map<String, String> classShapes = new HashMap<>();
+    private final Set<String> renderedClasses = new HashSet<>();
+    private Recording recording;
+    private long reusedCount;
+    private long renderedCount;
+
+    /**
+     * <p>Prepares cache for rendering of another build. Returned naming strategy and class source
+     * must be used by rendering, so that cache can record requests made by each class.</p>
+     */
+    public void startBuild(DefaultNamingStrategy naming, ListableClassReaderSource classSource,
+            Set<MethodReference> asyncMethods, Set<MethodReference> asyncFamilyMethods,
+            Set<MethodReference> injectedMethods, Properties properties) {
+        Map<Object, Object> newProperties = new HashMap<>(properties);
+        if (!asyncMethods.equals(this.asyncMethods) || !asyncFamilyMethods.equals(this.asyncFamilyMethods)
+                || !injectedMethods.equals(this.injectedMethods) || !newProperties.equals(this.properties)) {
+            fragments.clear();
+            this.asyncMethods = new HashSet<>(asyncMethods);
+            this.asyncFamilyMethods = new HashSet<>(asyncFamilyMethods);
+            this.injectedMethods = new HashSet<>(injectedMethods);
+            this.properties = newProperties;
+        } else {
+            fragments.keySet().retainAll(renderedClasses);
+        }
+        renderedClasses.clear();
+        classShapes.clear();
+        this.naming = new RecordingNamingStrategy(naming);
+        this.classSource = new RecordingClassSource(classSource);
+        reusedCount = 0;
+        renderedCount = 0;
+    }
+
+    public NamingStrategy getNaming() {
+        return naming;
+    }
+
+    public ListableClassReaderSource getClassSource() {
+        return classSource;
+    }
+
+    public long getReusedCount() {
+        return reusedCount;
+    }
+
+    public long getRenderedCount() {
+        return renderedCount;
+    }
+
+    void render(ClassNode cls, SourceWriter writer, RenderingContext context, Runnable renderer)
+            throws IOException {
+        renderedClasses.add(cls.getName());
+        if (!isCacheable(cls)) {
+            fragments.remove(cls.getName());
+            renderer.run();
+            return;
+        }
+
+        Fragment fragment = fragments.get(cls.getName());
+        if (fragment != null && replay(fragment, cls, context)) {
+            writer.append(fragment.text);
+            ++reusedCount;
+            return;
+        }
+
+        recording = new Recording();
+        context.setStringLookupListener(recording.strings::add);
+        writer.startCapture();
+        String text;
+        try {
+            renderer.run();
+        } finally {
+            context.setStringLookupListener(null);
+            text = writer.finishCapture();
+        }
+        if (recording.cacheable) {
+            fragments.put(cls.getName(), new Fragment(cls.getMethods(), text, recording, context));
+        } else {
+            fragments.remove(cls.getName());
+        }
+        recording = null;
+        ++renderedCount;
+    }
+
+    private static boolean isCacheable(ClassNode cls) {
+        for (MethodNode method : cls.getMethods()) {
+            if (method instanceof NativeMethodNode) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean replay(Fragment fragment, ClassNode cls, RenderingContext context) {
+        List<MethodNode> methods = cls.getMethods();
+        if (methods.size() != fragment.methods.length) {
+            return false;
+        }
+        for (int i = 0; i < fragment.methods.length; ++i) {
+            if (methods.get(i) != fragment.methods[i]) {
+                return false;
+            }
+        }
+
+        for (Map.Entry<String, String> entry : fragment.classShapes.entrySet()) {
+            if (!getClassShape(entry.getKey()).equals(entry.getValue())) {
+                return false;
+            }
+        }
+
+        // Naming requests are checked against a fork and strings are looked up without adding them to the pool,
+        // so that naming and string pool are only changed when all checks pass
+        DefaultNamingStrategy namingFork = naming.inner.fork();
+        for (NamingRequest request : fragment.namingRequests) {
+            try {
+                if (!request.result.equals(request.perform(namingFork))) {
+                    return false;
+                }
+            } catch (NamingException e) {
+                return false;
+            }
+        }
+
+        int poolSize = context.getStringPool().size();
+        Map<String, Integer> newStrings = new LinkedHashMap<>();
+        for (int i = 0; i < fragment.strings.length; ++i) {
+            String string = fragment.strings[i];
+            int index = context.findString(string);
+            if (index < 0) {
+                index = newStrings.computeIfAbsent(string, key -> poolSize + newStrings.size());
+            }
+            if (index != fragment.stringIndexes[i]) {
+                return false;
+            }
+        }
+
+        namingFork.commit();
+        for (String string : newStrings.keySet()) {
+            context.lookupString(string);
+        }
+        return true;
+    }
+
+    private String getClassShape(String className) {
+        return classShapes.computeIfAbsent(className, name -> computeClassShape(classSource.inner.get(name)));
+    }
+
+    private static String computeClassShape(ClassReader cls) {
+        if (cls == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(cls.getLevel()).append(cls.readModifiers()).append(':').append(cls.getParent())
+                .append(':').append(cls.getInterfaces());
+        for (MethodReader method : cls.getMethods()) {
+            sb.append(';').append(method.getDescriptor()).append(method.getLevel()).append(method.readModifiers());
+        }
+        for (FieldReader field : cls.getFields()) {
+            sb.append(';').append(field.getName()).append(':').append(field.getType())
+                    .append(field.getLevel()).append(field.readModifiers());
+        }
+        return sb.toString();
+    }
+
+    private static class Recording {
+        final List<NamingRequest> namingRequests = new ArrayList<>();
+        final List<String> strings = new ArrayList<>();
+        final Set<String> classes = new LinkedHashSet<>();
+        boolean cacheable = true;
+    }
+
+    private class Fragment {
+        final MethodNode[] methods;
+        final String text;
+        final NamingRequest[] namingRequests;
+        final String[] strings;
+        final int[] stringIndexes;
+        final Map<String, String> classShapes = new HashMap<>();
+
+        Fragment(List<MethodNode> methods, String text, Recording recording, RenderingContext context) {
+            this.methods = methods.toArray(new MethodNode[0]);
+            this.text = text;
+            namingRequests = recording.namingRequests.toArray(new NamingRequest[0]);
+            strings = recording.strings.toArray(new String[0]);
+            stringIndexes = new int[strings.length];
+            for (int i = 0; i < strings.length; ++i) {
+                // Strings are in the pool already, so this lookup does not change it
+                stringIndexes[i] = context.lookupString(strings[i]);
+            }
+            for (String className : recording.classes) {
+                classShapes.put(className, getClassShape(className));
+            }
+        }
+    }
+
+    private static final class NamingRequest {
+        static final byte CLASS = 0;
+        static final byte METHOD = 1;
+        static final byte INIT = 2;
+        static final byte FULL_METHOD = 3;
+        static final byte FIELD = 4;
+        static final byte FULL_FIELD = 5;
+        static final byte FUNCTION = 6;
+        final byte kind;
+        final Object key;
+        final String result;
+
+        NamingRequest(byte kind, Object key, String result) {
+            this.kind = kind;
+            this.key = key;
+            this.result = result;
+        }
+
+        String perform(NamingStrategy naming) {
+            switch (kind) {
+                case CLASS:
+                    return naming.getNameFor((String) key);
+                case METHOD:
+                    return naming.getNameFor((MethodDescriptor) key);
+                case INIT:
+                    return naming.getNameForInit((MethodReference) key);
+                case FULL_METHOD:
+                    return naming.getFullNameFor((MethodReference) key);
+                case FIELD:
+                    return naming.getNameFor((FieldReference) key);
+                case FULL_FIELD:
+                    return naming.getFullNameFor((FieldReference) key);
+                case FUNCTION:
+                    return naming.getNameForFunction((String) key);
+                default:
+                    throw new AssertionError();
+            }
+        }
+    }
+
+    private class RecordingNamingStrategy implements NamingStrategy {
+        final DefaultNamingStrategy inner;
+
+        RecordingNamingStrategy(DefaultNamingStrategy inner) {
+            this.inner = inner;
+        }
+
+        private String request(byte kind, Object key) {
+            NamingRequest request = new NamingRequest(kind, key, null);
+            String result = request.perform(inner);
+            if (recording != null) {
+                recording.namingRequests.add(new NamingRequest(kind, key, result));
+            }
+            return result;
+        }
+
+        @Override
+        public String getNameFor(String cls) {
+            return request(NamingRequest.CLASS, cls);
+        }
+
+        @Override
+        public String getNameFor(MethodDescriptor method) {
+            return request(NamingRequest.METHOD, method);
+        }
+
+        @Override
+        public String getNameForInit(MethodReference method) {
+            return request(NamingRequest.INIT, method);
+        }
+
+        @Override
+        public String getFullNameFor(MethodReference method) {
+            return request(NamingRequest.FULL_METHOD, method);
+        }
+
+        @Override
+        public String getNameFor(FieldReference field) {
+            return request(NamingRequest.FIELD, field);
+        }
+
+        @Override
+        public String getFullNameFor(FieldReference field) {
+            return request(NamingRequest.FULL_FIELD, field);
+        }
+
+        @Override
+        public String getNameForFunction(String name) {
+            return request(NamingRequest.FUNCTION, name);
+        }
+    }
+
+    private class RecordingClassSource implements ListableClassReaderSource {
+        final ListableClassReaderSource inner;
+
+        RecordingClassSource(ListableClassReaderSource inner) {
+            this.inner = inner;
+        }
+
+        @Override
+        public Set<String> getClassNames() {
+            if (recording != null) {
+                // Can't track what is done with all classes, so don't reuse code that asks for them
+                recording.cacheable = false;
+            }
+            return inner.getClassNames();
+        }
+
+        @Override
+        public ClassReader get(String name) {
+            if (recording != null) {
+                recording.classes.add(name);
+            }
+            return inner.get(name);
+        }
+    }
+}
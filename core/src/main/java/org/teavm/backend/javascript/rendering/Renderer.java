@@ -39,13 +39,16 @@ import org.teavm.common.ServiceRepository;
 import org.teavm.debugging.information.DebugInformationEmitter;
 import org.teavm.debugging.information.DummyDebugInformationEmitter;
 import org.teavm.diagnostics.Diagnostics;
+import org.teavm.model.ClassReader;
 import org.teavm.model.ElementModifier;
+import org.teavm.model.FieldReader;
 import org.teavm.model.FieldReference;
 import org.teavm.model.ListableClassReaderSource;
 import org.teavm.model.MethodDescriptor;
 import org.teavm.model.MethodReader;
 import org.teavm.model.MethodReference;
 import org.teavm.model.ValueType;
+import org.teavm.model.classes.TagRegistry;
 import org.teavm.vm.RenderingException;
 
 public class Renderer implements RenderingManager {
@@ -62,6 +65,7 @@ public class Renderer implements RenderingManager {
     private final Diagnostics diagnostics;
     private RenderingContext context;
     private List<PostponedFieldInitializer> postponedFieldInitializers = new ArrayList<>();
+    private ClassFragmentCache fragmentCache;
 
     public Renderer(SourceWriter writer, Set<MethodReference> asyncMethods, Set<MethodReference> asyncFamilyMethods,
             Diagnostics diagnostics, RenderingContext context) {
@@ -120,6 +124,10 @@ public class Renderer implements RenderingManager {
         this.debugEmitter = debugEmitter;
     }
 
+    public void setFragmentCache(ClassFragmentCache fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
     public void setProperties(Properties properties) {
         this.properties.clear();
         this.properties.putAll(properties);
@@ -163,6 +171,12 @@ public class Renderer implements RenderingManager {
             renderRuntimeNullCheck();
             renderRuntimeIntern();
             renderRuntimeThreads();
+            if (context.isLongAsBigInt()) {
+                renderRuntimeBigIntLongs();
+            }
+            if (context.isNativeStrings()) {
+                renderRuntimeNativeStrings();
+            }
         } catch (NamingException e) {
             throw new RenderingException("Error rendering runtime methods. See a cause for details", e);
         } catch (IOException e) {
@@ -182,13 +196,19 @@ public class Renderer implements RenderingManager {
     private void renderRuntimeString() throws IOException {
         MethodReference stringCons = new MethodReference(String.class, "<init>", char[].class, void.class);
         writer.append("function $rt_str(str) {").indent().softNewLine();
+        if (context.isNativeStrings()) {
+            writer.append("return str === undefined ? null : str;").softNewLine();
+            writer.outdent().append("}").newLine();
+            return;
+        }
         writer.append("if (str == null) {").indent().softNewLine();
         writer.append("return null;").softNewLine();
         writer.outdent().append("}").softNewLine();
-        writer.append("var characters = $rt_createCharArray(str.length);").softNewLine();
+        writer.append("var sz = str.length;").softNewLine();
+        writer.append("var characters = $rt_createCharArray(sz);").softNewLine();
         writer.append("var charsBuffer = characters.data;").softNewLine();
-        writer.append("for (var i = 0; i < str.length; i = (i + 1) | 0) {").indent().softNewLine();
-        writer.append("charsBuffer[i] = str.charCodeAt(i) & 0xFFFF;").softNewLine();
+        writer.append("for (var i = 0; i < sz; i = (i + 1) | 0) {").indent().softNewLine();
+        writer.append("charsBuffer[i] = str.charCodeAt(i);").softNewLine();
         writer.outdent().append("}").softNewLine();
         writer.append("return ").append(naming.getNameForInit(stringCons)).append("(characters);").softNewLine();
         writer.outdent().append("}").newLine();
@@ -199,17 +219,48 @@ public class Renderer implements RenderingManager {
         MethodReference getChars = new MethodReference(String.class, "getChars", int.class, int.class,
                 char[].class, int.class, void.class);
         writer.append("function $rt_ustr(str) {").indent().softNewLine();
-        writer.append("var result = \"\";").softNewLine();
+        if (context.isNativeStrings()) {
+            writer.append("return str;").softNewLine();
+            writer.outdent().append("}").newLine();
+            return;
+        }
         writer.append("var sz = ").appendMethodBody(stringLen).append("(str);").softNewLine();
         writer.append("var array = $rt_createCharArray(sz);").softNewLine();
         writer.appendMethodBody(getChars).append("(str, 0, sz, array, 0);").softNewLine();
-        writer.append("for (var i = 0; i < sz; i = (i + 1) | 0) {").indent().softNewLine();
-        writer.append("result += String.fromCharCode(array.data[i]);").softNewLine();
-        writer.outdent().append("}").softNewLine();
+        writer.append("var result = $rt_charArrayToString(array.data, 0, sz);").softNewLine();
         writer.append("return result;").softNewLine();
         writer.outdent().append("}").newLine();
     }
 
+    private void renderRuntimeBigIntLongs() throws IOException {
+        writer.append("Long_ZERO = 0n;").softNewLine();
+        writer.append("Long_fromInt = function(val) {").indent().softNewLine();
+        writer.append("return BigInt(val);").softNewLine();
+        writer.outdent().append("};").softNewLine();
+        writer.append("Long_fromNumber = function(val) {").indent().softNewLine();
+        writer.append("if (val !== val) {").indent().softNewLine();
+        writer.append("return 0n;").softNewLine();
+        writer.outdent().append("} else if (val >= 9223372036854775807) {").indent().softNewLine();
+        writer.append("return 9223372036854775807n;").softNewLine();
+        writer.outdent().append("} else if (val <= -9223372036854775808) {").indent().softNewLine();
+        writer.append("return -9223372036854775808n;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return BigInt(Math.trunc(val));").softNewLine();
+        writer.outdent().append("};").softNewLine();
+        writer.append("Long_toNumber = function(val) {").indent().softNewLine();
+        writer.append("return Number(val);").softNewLine();
+        writer.outdent().append("};").softNewLine();
+        writer.append("Long_compare = function(a, b) {").indent().softNewLine();
+        writer.append("return a > b ? 1 : a < b ? -1 : 0;").softNewLine();
+        writer.outdent().append("};").softNewLine();
+        writer.append("Long_hashCode = function(a) {").indent().softNewLine();
+        writer.append("return Number(BigInt.asIntN(32, a ^ (a >> 32n)));").softNewLine();
+        writer.outdent().append("};").softNewLine();
+        writer.append("$rt_createLongArray = function(sz) {").indent().softNewLine();
+        writer.append("return new ($rt_arraycls($rt_longcls()))(new BigInt64Array(sz));").softNewLine();
+        writer.outdent().append("};").newLine();
+    }
+
     private void renderRuntimeNullCheck() throws IOException {
         writer.append("function $rt_nullCheck(val) {").indent().softNewLine();
         writer.append("if (val === null) {").indent().softNewLine();
@@ -220,6 +271,102 @@ public class Renderer implements RenderingManager {
         writer.outdent().append("}").newLine();
     }
 
+    private void renderRuntimeNativeStrings() throws IOException {
+        writer.append("$rt_isInstance = function(obj, cls) {").indent().softNewLine();
+        writer.append("if (typeof obj === \"string\") {").indent().softNewLine();
+        writer.append("return $rt_isAssignable(").appendClass("java.lang.String").append(", cls);").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return obj !== null && !!obj.constructor.$meta && $rt_isAssignable(obj.constructor, cls);")
+                .softNewLine();
+        writer.outdent().append("};").newLine();
+
+        writer.append("function $rt_stringFromChars(characters) {").indent().softNewLine();
+        writer.append("return $rt_charArrayToString(characters.data, 0, characters.data.length);").softNewLine();
+        writer.outdent().append("}").newLine();
+
+        // Methods of String and Object are copied to String.prototype, so that virtual calls work on primitive
+        // strings. Code of String reads its characters through accessor that converts the latest string it
+        // was asked for. Equal primitive strings can't be told apart, so identity is computed from characters,
+        // while fields of Object, like monitor, are kept aside only until they get back to default value
+        writer.append("function $rt_nativeStrings(cls, charactersField, fields) {").indent().softNewLine();
+        writer.append("var prototype = $rt_initClass(cls).prototype;").softNewLine();
+        writer.append("for (var name in prototype) {").indent().softNewLine();
+        writer.append("if (name !== \"constructor\" && typeof prototype[name] === \"function\") {").indent()
+                .softNewLine();
+        writer.append("Object.defineProperty(String.prototype, name, "
+                + "{ value : prototype[name], writable : true, configurable : true });").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("var lastString = null;").softNewLine();
+        writer.append("var lastCharacters = null;").softNewLine();
+        writer.append("Object.defineProperty(String.prototype, charactersField, { get : function() {").indent()
+                .softNewLine();
+        writer.append("if (this !== lastString) {").indent().softNewLine();
+        writer.append("lastCharacters = $rt_createCharArray(this.length);").softNewLine();
+        writer.append("for (var i = 0; i < this.length; i = (i + 1) | 0) {").indent().softNewLine();
+        writer.append("lastCharacters.data[i] = this.charCodeAt(i);").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("lastString = this;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return lastCharacters;").softNewLine();
+        writer.outdent().append("}, configurable : true });").softNewLine();
+        writer.append("for (var i = 0; i < fields.length; i += 2) {").indent().softNewLine();
+        writer.append("$rt_nativeStringField(fields[i], fields[i + 1]);").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("Object.defineProperty(String.prototype, \"$id\", {").indent().softNewLine();
+        writer.append("get : function() {").indent().softNewLine();
+        writer.append("var hash = 0;").softNewLine();
+        writer.append("for (var i = 0; i < this.length; i = (i + 1) | 0) {").indent().softNewLine();
+        writer.append("hash = (31 * hash + this.charCodeAt(i)) | 0;").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.append("return hash !== 0 ? hash : 1;").softNewLine();
+        writer.outdent().append("},").softNewLine();
+        writer.append("set : function(value) {},").softNewLine();
+        writer.append("configurable : true").softNewLine();
+        writer.outdent().append("});").softNewLine();
+        writer.outdent().append("}").newLine();
+
+        writer.append("function $rt_nativeStringField(name, defaultValue) {").indent().softNewLine();
+        writer.append("var values = new Map();").softNewLine();
+        writer.append("Object.defineProperty(String.prototype, name, {").indent().softNewLine();
+        writer.append("get : function() {").indent().softNewLine();
+        writer.append("return values.has(this) ? values.get(this) : defaultValue;").softNewLine();
+        writer.outdent().append("},").softNewLine();
+        writer.append("set : function(value) {").indent().softNewLine();
+        writer.append("if (value === defaultValue) {").indent().softNewLine();
+        writer.append("values.delete(this);").softNewLine();
+        writer.outdent().append("} else {").indent().softNewLine();
+        writer.append("values.set(this, value);").softNewLine();
+        writer.outdent().append("}").softNewLine();
+        writer.outdent().append("},").softNewLine();
+        writer.append("configurable : true").softNewLine();
+        writer.outdent().append("});").softNewLine();
+        writer.outdent().append("}").newLine();
+    }
+
+    private void renderNativeStrings() throws IOException {
+        writer.append("$rt_nativeStrings(").appendClass("java.lang.String").append(",").ws().append("\"")
+                .appendField(new FieldReference("java.lang.String", "characters")).append("\",").ws().append("[");
+        ClassReader objectClass = classSource.get("java.lang.Object");
+        boolean first = true;
+        for (FieldReader field : objectClass.getFields()) {
+            if (field.hasModifier(ElementModifier.STATIC)) {
+                continue;
+            }
+            Object value = field.getInitialValue();
+            if (value == null) {
+                value = getDefaultValue(field.getType());
+            }
+            if (!first) {
+                writer.append(",").ws();
+            }
+            writer.append("\"").appendField(field.getReference()).append("\",").ws()
+                    .append(context.constantToString(value));
+            first = false;
+        }
+        writer.append("]);").newLine();
+    }
+
     private void renderRuntimeIntern() throws IOException {
         writer.append("function $rt_intern(str) {").indent().softNewLine();
         writer.append("return ").appendMethodBody(new MethodReference(String.class, "intern", String.class))
@@ -279,9 +426,24 @@ public class Renderer implements RenderingManager {
             renderDeclaration(cls);
         }
         for (ClassNode cls : classes) {
-            renderMethodBodies(cls);
+            if (fragmentCache != null) {
+                try {
+                    fragmentCache.render(cls, writer, context, () -> renderMethodBodies(cls));
+                } catch (IOException e) {
+                    throw new RenderingException("IO error occurred", e);
+                }
+            } else {
+                renderMethodBodies(cls);
+            }
         }
         renderClassMetadata(classes);
+        if (context.isNativeStrings()) {
+            try {
+                renderNativeStrings();
+            } catch (IOException e) {
+                throw new RenderingException("IO error occurred", e);
+            }
+        }
     }
 
     private void renderDeclaration(ClassNode cls) throws RenderingException {
@@ -442,8 +604,19 @@ public class Renderer implements RenderingManager {
     }
 
     private void renderClassMetadata(List<ClassNode> classes) {
+        TagRegistry tagRegistry = new TagRegistry(classSource);
+        int nextInterfaceTag = 0;
+        for (ClassNode cls : classes) {
+            for (TagRegistry.Range range : tagRegistry.getRanges(cls.getName())) {
+                nextInterfaceTag = Math.max(nextInterfaceTag, range.upper);
+            }
+        }
+
         try {
-            writer.append("$rt_metadata([");
+            // In lazy mode each class gets a function that returns its metadata. Engines only pre-parse
+            // function bodies, so metadata of classes that are never used is neither parsed nor evaluated
+            boolean lazy = context.isLazyMetadata();
+            writer.append(lazy ? "$rt_lazyMetadata([" : "$rt_metadata([");
             boolean first = true;
             for (ClassNode cls : classes) {
                 if (!first) {
@@ -451,6 +624,9 @@ public class Renderer implements RenderingManager {
                 }
                 first = false;
                 writer.appendClass(cls.getName()).append(",").ws();
+                if (lazy) {
+                    writer.append("function()").ws().append("{").ws().append("return [");
+                }
                 writer.append("\"").append(RenderingUtil.escapeString(cls.getName())).append("\",").ws();
                 if (cls.getParentName() != null) {
                     writer.appendClass(cls.getParentName());
@@ -489,6 +665,23 @@ public class Renderer implements RenderingManager {
                 }
 
                 renderVirtualDeclarations(virtualMethods);
+
+                // Classes get range of tags that includes tags of all subclasses, interfaces get unique tag
+                // past these ranges. Classes without known hierarchy are checked by walking supertypes
+                writer.append(',').ws();
+                if (cls.getModifiers().contains(ElementModifier.INTERFACE)) {
+                    writer.append(nextInterfaceTag++).append(',').ws().append('0');
+                } else {
+                    List<TagRegistry.Range> ranges = tagRegistry.getRanges(cls.getName());
+                    if (ranges.size() == 1) {
+                        writer.append(ranges.get(0).lower).append(',').ws().append(ranges.get(0).upper);
+                    } else {
+                        writer.append("-1,").ws().append("0");
+                    }
+                }
+                if (lazy) {
+                    writer.append("];").ws().append("}");
+                }
             }
             writer.append("]);").newLine();
         } catch (NamingException e) {
@@ -542,7 +735,12 @@ public class Renderer implements RenderingManager {
             writer.append(variableNameForInitializer(i));
         }
         writer.append(");").softNewLine();
-        writer.append("return $r;").softNewLine();
+        if (context.isNativeStrings() && ref.getClassName().equals("java.lang.String")) {
+            writer.append("return $rt_stringFromChars($r.").appendField(new FieldReference(ref.getClassName(),
+                    "characters")).append(");").softNewLine();
+        } else {
+            writer.append("return $r;").softNewLine();
+        }
         writer.outdent().append("}").newLine();
         debugEmitter.emitMethod(null);
     }
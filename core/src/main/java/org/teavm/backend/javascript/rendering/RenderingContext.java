@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Consumer;
 import org.teavm.backend.javascript.codegen.NamingStrategy;
 import org.teavm.backend.javascript.spi.InjectedBy;
 import org.teavm.backend.javascript.spi.Injector;
@@ -51,6 +52,10 @@ public class RenderingContext {
     private final List<String> readonlyStringPool = Collections.unmodifiableList(stringPool);
     private final Map<MethodReference, InjectorHolder> injectorMap = new HashMap<>();
     private boolean minifying;
+    private boolean longAsBigInt;
+    private boolean lazyMetadata;
+    private boolean nativeStrings;
+    private Consumer<String> stringLookupListener;
 
     public RenderingContext(DebugInformationEmitter debugEmitter, ListableClassReaderSource classSource,
             ClassLoader classLoader, ServiceRepository services, Properties properties,
@@ -121,13 +126,53 @@ public class RenderingContext {
         return minifying;
     }
 
+    public boolean isLongAsBigInt() {
+        return longAsBigInt;
+    }
+
+    public void setLongAsBigInt(boolean longAsBigInt) {
+        this.longAsBigInt = longAsBigInt;
+    }
+
+    public boolean isLazyMetadata() {
+        return lazyMetadata;
+    }
+
+    public void setLazyMetadata(boolean lazyMetadata) {
+        this.lazyMetadata = lazyMetadata;
+    }
+
+    public boolean isNativeStrings() {
+        return nativeStrings;
+    }
+
+    public void setNativeStrings(boolean nativeStrings) {
+        this.nativeStrings = nativeStrings;
+    }
+
+    void setStringLookupListener(Consumer<String> stringLookupListener) {
+        this.stringLookupListener = stringLookupListener;
+    }
+
     public int lookupString(String string) {
+        if (stringLookupListener != null) {
+            stringLookupListener.accept(string);
+        }
         return stringPoolMap.computeIfAbsent(string, key -> {
             stringPool.add(key);
             return stringPool.size() - 1;
         });
     }
 
+    /**
+     * Returns index of the given string in the pool, or -1 if it's not in the pool. Unlike
+     * {@link #lookupString(String)}, does not add string to the pool.
+     */
+    int findString(String string) {
+        Integer index = stringPoolMap.get(string);
+        return index != null ? index : -1;
+    }
+
     public List<String> getStringPool() {
         return readonlyStringPool;
     }
@@ -141,11 +186,16 @@ public class RenderingContext {
             return naming.getNameForFunction("$rt_cls") + "(" + typeToClsString(type) + ")";
         } else if (cst instanceof String) {
             String string = (String) cst;
+            if (nativeStrings) {
+                return "\"" + RenderingUtil.escapeString(string) + "\"";
+            }
             int index = lookupString(string);
             return "$rt_s(" + index + ")";
         } else if (cst instanceof Long) {
             long value = (Long) cst;
-            if (value == 0) {
+            if (longAsBigInt) {
+                return value + "n";
+            } else if (value == 0) {
                 return "Long_ZERO";
             } else if ((int) value == value) {
                 return "Long_fromInt(" + value + ")";
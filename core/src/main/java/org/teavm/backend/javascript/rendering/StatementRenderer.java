@@ -149,24 +149,36 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                 pushLocation(statement.getLocation());
             }
             prevCallSite = debugEmitter.emitCallSite();
-            if (statement.getLeftValue() != null) {
+            Expr leftValue = statement.getLeftValue();
+            Expr rightValue = statement.getRightValue();
+            if (leftValue == null && isStringInitialization(rightValue)) {
+                // Primitive string can't be initialized in place, so the constructed object is replaced
+                // by the result of initializer function.
+                InvocationExpr invocation = (InvocationExpr) rightValue;
+                List<Expr> arguments = invocation.getArguments();
+                leftValue = arguments.get(0);
+                rightValue = Expr.constructObject(invocation.getMethod(),
+                        arguments.subList(1, arguments.size()).toArray(new Expr[0]));
+                rightValue.setLocation(invocation.getLocation());
+            }
+            if (leftValue != null) {
                 if (statement.isAsync()) {
                     writer.append(context.tempVarName());
                 } else {
                     precedence = Precedence.COMMA;
-                    statement.getLeftValue().acceptVisitor(this);
+                    leftValue.acceptVisitor(this);
                 }
                 writer.ws().append("=").ws();
             }
             precedence = Precedence.COMMA;
-            statement.getRightValue().acceptVisitor(this);
+            rightValue.acceptVisitor(this);
             debugEmitter.emitCallSite();
             writer.append(";").softNewLine();
             if (statement.isAsync()) {
                 emitSuspendChecker();
-                if (statement.getLeftValue() != null) {
+                if (leftValue != null) {
                     precedence = Precedence.COMMA;
-                    statement.getLeftValue().acceptVisitor(this);
+                    leftValue.acceptVisitor(this);
                     writer.ws().append("=").ws().append(context.tempVarName()).append(";").softNewLine();
                 }
             }
@@ -178,6 +190,23 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
         }
     }
 
+    private boolean isStringInitialization(Expr expr) {
+        if (!context.isNativeStrings() || !(expr instanceof InvocationExpr)) {
+            return false;
+        }
+        InvocationExpr invocation = (InvocationExpr) expr;
+        MethodReference method = invocation.getMethod();
+        if (invocation.getType() != InvocationType.SPECIAL || !method.getName().equals("<init>")
+                || !method.getClassName().equals("java.lang.String")
+                || !(invocation.getArguments().get(0) instanceof VariableExpr)) {
+            return false;
+        }
+        // this(...) calls inside constructors of String still initialize the object in place
+        MethodReference current = currentMethod != null ? currentMethod.getReference() : null;
+        return current == null || !current.getClassName().equals("java.lang.String")
+                || !current.getName().equals("<init>");
+    }
+
     @Override
     public void visit(SequentialStatement statement) {
         visitStatements(statement.getSequence());
@@ -609,9 +638,140 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
         }
     }
 
+    private void visitBigIntBinary(BinaryExpr expr) {
+        switch (expr.getOperation()) {
+            case ADD:
+                visitWrappedBigIntBinary(expr, "+");
+                break;
+            case SUBTRACT:
+                visitWrappedBigIntBinary(expr, "-");
+                break;
+            case MULTIPLY:
+                visitWrappedBigIntBinary(expr, "*");
+                break;
+            case DIVIDE:
+                visitWrappedBigIntBinary(expr, "/");
+                break;
+            case MODULO:
+                visitBinary(expr, "%", false);
+                break;
+            case BITWISE_OR:
+                visitBinary(expr, "|", false);
+                break;
+            case BITWISE_AND:
+                visitBinary(expr, "&", false);
+                break;
+            case BITWISE_XOR:
+                visitBinary(expr, "^", false);
+                break;
+            case LEFT_SHIFT:
+                visitBigIntShift(expr, "<<", true, false);
+                break;
+            case RIGHT_SHIFT:
+                visitBigIntShift(expr, ">>", false, false);
+                break;
+            case UNSIGNED_RIGHT_SHIFT:
+                visitBigIntShift(expr, ">>", true, true);
+                break;
+            case COMPARE:
+                visitBinaryFunction(expr, naming.getNameForFunction("$rt_compare"));
+                break;
+            case EQUALS:
+                visitBinary(expr, "===", false);
+                break;
+            case NOT_EQUALS:
+                visitBinary(expr, "!==", false);
+                break;
+            case LESS:
+                visitBinary(expr, "<", false);
+                break;
+            case LESS_OR_EQUALS:
+                visitBinary(expr, "<=", false);
+                break;
+            case GREATER:
+                visitBinary(expr, ">", false);
+                break;
+            case GREATER_OR_EQUALS:
+                visitBinary(expr, ">=", false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void visitWrappedBigIntBinary(BinaryExpr expr, String op) {
+        try {
+            writer.append("BigInt.asIntN(64,").ws();
+            precedence = Precedence.min();
+            visitBinary(expr, op, false);
+            writer.append(')');
+        } catch (IOException e) {
+            throw new RenderingException("IO error occurred", e);
+        }
+    }
+
+    private void visitBigIntShift(BinaryExpr expr, String op, boolean wrapped, boolean unsigned) {
+        try {
+            if (expr.getLocation() != null) {
+                pushLocation(expr.getLocation());
+            }
+            if (wrapped) {
+                writer.append("BigInt.asIntN(64,").ws();
+                precedence = Precedence.min();
+            }
+            visitBinary(expr.getOperation(), op, () -> {
+                try {
+                    if (unsigned) {
+                        writer.append("BigInt.asUintN(64,").ws();
+                        precedence = Precedence.min();
+                        expr.getFirstOperand().acceptVisitor(this);
+                        writer.append(')');
+                    } else {
+                        expr.getFirstOperand().acceptVisitor(this);
+                    }
+                } catch (IOException e) {
+                    throw new RenderingException("IO error occurred", e);
+                }
+            }, () -> {
+                try {
+                    if (expr.getSecondOperand() instanceof ConstantExpr) {
+                        Object distance = ((ConstantExpr) expr.getSecondOperand()).getValue();
+                        if (distance instanceof Integer) {
+                            writer.append(((Integer) distance & 63) + "n");
+                            return;
+                        }
+                    }
+                    writer.append("BigInt(");
+                    precedence = Precedence.min();
+                    visitBinary(BinaryOperation.BITWISE_AND, "&", () -> expr.getSecondOperand().acceptVisitor(this),
+                            () -> {
+                                try {
+                                    writer.append("63");
+                                } catch (IOException e) {
+                                    throw new RenderingException("IO error occurred", e);
+                                }
+                            });
+                    writer.append(')');
+                } catch (IOException e) {
+                    throw new RenderingException("IO error occurred", e);
+                }
+            });
+            if (wrapped) {
+                writer.append(')');
+            }
+            if (expr.getLocation() != null) {
+                popLocation();
+            }
+        } catch (IOException e) {
+            throw new RenderingException("IO error occurred", e);
+        }
+    }
+
     @Override
     public void visit(BinaryExpr expr) {
-        if (expr.getType() == OperationType.LONG) {
+        if (expr.getType() == OperationType.LONG && context.isLongAsBigInt()) {
+            visitBigIntBinary(expr);
+        } else if (expr.getType() == OperationType.LONG) {
             switch (expr.getOperation()) {
                 case ADD:
                     visitBinaryFunction(expr, "Long_add");
@@ -753,7 +913,7 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             Precedence outerPrecedence = precedence;
             switch (expr.getOperation()) {
                 case NOT: {
-                    if (expr.getType() == OperationType.LONG) {
+                    if (expr.getType() == OperationType.LONG && !context.isLongAsBigInt()) {
                         writer.append("Long_not(");
                         precedence = Precedence.min();
                         expr.getOperand().acceptVisitor(this);
@@ -772,7 +932,12 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                     break;
                 }
                 case NEGATE:
-                    if (expr.getType() == OperationType.LONG) {
+                    if (expr.getType() == OperationType.LONG && context.isLongAsBigInt()) {
+                        writer.append("BigInt.asIntN(64,").ws().append("-");
+                        precedence = Precedence.UNARY;
+                        expr.getOperand().acceptVisitor(this);
+                        writer.append(')');
+                    } else if (expr.getType() == OperationType.LONG) {
                         writer.append("Long_neg(");
                         precedence = Precedence.min();
                         expr.getOperand().acceptVisitor(this);
@@ -856,7 +1021,7 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             switch (expr.getSource()) {
                 case INT:
                     if (expr.getTarget() == OperationType.LONG) {
-                        writer.append("Long_fromInt(");
+                        writer.append(context.isLongAsBigInt() ? "BigInt(" : "Long_fromInt(");
                         precedence = Precedence.min();
                         expr.getValue().acceptVisitor(this);
                         writer.append(')');
@@ -867,13 +1032,20 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
                 case LONG:
                     switch (expr.getTarget()) {
                         case INT:
-                            precedence = Precedence.MEMBER_ACCESS;
-                            expr.getValue().acceptVisitor(this);
-                            writer.append(".lo");
+                            if (context.isLongAsBigInt()) {
+                                writer.append("Number(BigInt.asIntN(32,").ws();
+                                precedence = Precedence.min();
+                                expr.getValue().acceptVisitor(this);
+                                writer.append("))");
+                            } else {
+                                precedence = Precedence.MEMBER_ACCESS;
+                                expr.getValue().acceptVisitor(this);
+                                writer.append(".lo");
+                            }
                             break;
                         case FLOAT:
                         case DOUBLE:
-                            writer.append("Long_toNumber(");
+                            writer.append(context.isLongAsBigInt() ? "Number(" : "Long_toNumber(");
                             precedence = Precedence.min();
                             expr.getValue().acceptVisitor(this);
                             writer.append(')');
@@ -1302,7 +1474,22 @@ public class StatementRenderer implements ExprVisitor, StatementVisitor {
             if (expr.getType() instanceof ValueType.Object) {
                 String clsName = ((ValueType.Object) expr.getType()).getClassName();
                 ClassReader cls = classSource.get(clsName);
-                if (cls != null && !cls.hasModifier(ElementModifier.INTERFACE)) {
+                if (context.isNativeStrings() && clsName.equals("java.lang.String")) {
+                    writer.append("(typeof ");
+                    precedence = Precedence.UNARY;
+                    expr.getExpr().acceptVisitor(this);
+                    writer.append(" === \"string\")");
+                    if (expr.getLocation() != null) {
+                        popLocation();
+                    }
+                    return;
+                }
+                // Primitive strings are not instances of Object constructor, so they are checked by runtime.
+                // With lazy metadata an object may still have placeholder prototype, which native instanceof
+                // does not see through
+                boolean nativeSupertype = context.isNativeStrings() && clsName.equals("java.lang.Object");
+                if (cls != null && !cls.hasModifier(ElementModifier.INTERFACE) && !nativeSupertype
+                        && !context.isLazyMetadata()) {
                     boolean needsParentheses = Precedence.COMPARISON.ordinal() < precedence.ordinal();
                     if (needsParentheses) {
                         writer.append('(');
@@ -23,9 +23,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.teavm.ast.RegularMethodNode;
 import org.teavm.ast.decompilation.Decompiler;
 import org.teavm.backend.wasm.binary.BinaryWriter;
 import org.teavm.backend.wasm.generate.WasmClassGenerator;
@@ -76,6 +80,7 @@ import org.teavm.backend.wasm.render.WasmCRenderer;
 import org.teavm.backend.wasm.render.WasmRenderer;
 import org.teavm.backend.wasm.transformation.IndirectCallTraceTransformation;
 import org.teavm.backend.wasm.transformation.MemoryAccessTraceTransformation;
+import org.teavm.common.ParallelTasks;
 import org.teavm.dependency.ClassDependency;
 import org.teavm.dependency.DependencyChecker;
 import org.teavm.dependency.DependencyListener;
@@ -436,34 +441,38 @@ public class WasmTarget implements TeaVMTarget {
             }
         }
 
+        Map<MethodHolder, MethodHolder> implementors = new HashMap<>();
+        List<MethodHolder> methodsToDecompile = new ArrayList<>();
         for (MethodHolder method : methods) {
-            ClassHolder cls = classes.get(method.getOwnerName());
-
-            MethodHolder implementor = method;
-            AnnotationHolder delegateAnnot = method.getAnnotations().get(DelegateTo.class.getName());
-            if (delegateAnnot != null) {
-                String methodName = delegateAnnot.getValue("value").getString();
-                boolean found = false;
-                for (MethodHolder candidate : cls.getMethods()) {
-                    if (candidate.getName().equals(methodName)) {
-                        if (found) {
-                            controller.getDiagnostics().error(new CallLocation(method.getReference()),
-                                    "Method is delegated to " + methodName + " but several implementations "
-                                            + "found");
-                            break;
-                        }
-                        implementor = candidate;
-                        found = true;
-                    }
-                }
-            }
-
+            MethodHolder implementor = findImplementor(classes.get(method.getOwnerName()), method);
+            implementors.put(method, implementor);
             if (implementor.hasModifier(ElementModifier.NATIVE)) {
                 if (context.getImportedMethod(method.getReference()) == null) {
                     CallLocation location = new CallLocation(method.getReference());
                     controller.getDiagnostics().error(location, "Method {{m0}} is native but "
                             + "has no {{c1}} annotation on it", method.getReference(), Import.class.getName());
                 }
+            } else if (method == implementor && implementor.getProgram() != null
+                    && implementor.getProgram().basicBlockCount() > 0) {
+                methodsToDecompile.add(method);
+            }
+        }
+
+        // Decompilation does not touch memory layout, so it can be done concurrently. Function bodies are
+        // generated afterwards in a fixed order, since they allocate strings and classes in the data segment
+        ThreadLocal<Decompiler> decompilers = ThreadLocal.withInitial(() -> new Decompiler(classes,
+                controller.getClassLoader(), new HashSet<>(), new HashSet<>()));
+        Map<MethodHolder, RegularMethodNode> methodAsts = new ConcurrentHashMap<>();
+        ParallelTasks.forEach(controller.getThreadCount(), methodsToDecompile,
+                method -> methodAsts.put(method, decompilers.get().decompileRegular(method)),
+                completed -> !controller.wasCancelled());
+        if (controller.wasCancelled()) {
+            return;
+        }
+
+        for (MethodHolder method : methods) {
+            MethodHolder implementor = implementors.get(method);
+            if (implementor.hasModifier(ElementModifier.NATIVE)) {
                 generator.generateNative(method.getReference());
                 continue;
             }
@@ -471,7 +480,7 @@ public class WasmTarget implements TeaVMTarget {
                 continue;
             }
             if (method == implementor) {
-                generator.generate(method.getReference(), implementor);
+                generator.generate(method.getReference(), methodAsts.get(method));
             } else {
                 generateStub(module, method, implementor);
             }
@@ -481,6 +490,28 @@ public class WasmTarget implements TeaVMTarget {
         }
     }
 
+    private MethodHolder findImplementor(ClassHolder cls, MethodHolder method) {
+        MethodHolder implementor = method;
+        AnnotationHolder delegateAnnot = method.getAnnotations().get(DelegateTo.class.getName());
+        if (delegateAnnot != null) {
+            String methodName = delegateAnnot.getValue("value").getString();
+            boolean found = false;
+            for (MethodHolder candidate : cls.getMethods()) {
+                if (candidate.getName().equals(methodName)) {
+                    if (found) {
+                        controller.getDiagnostics().error(new CallLocation(method.getReference()),
+                                "Method is delegated to " + methodName + " but several implementations "
+                                        + "found");
+                        break;
+                    }
+                    implementor = candidate;
+                    found = true;
+                }
+            }
+        }
+        return implementor;
+    }
+
     private void generateIsSupertypeFunctions(TagRegistry tagRegistry, WasmModule module,
             WasmClassGenerator classGenerator) {
         for (ValueType type : classGenerator.getRegisteredClasses()) {
@@ -71,10 +71,13 @@ public class WasmGenerator {
     }
 
     public WasmFunction generate(MethodReference methodReference, MethodHolder bodyMethod) {
+        return generate(methodReference, decompiler.decompileRegular(bodyMethod));
+    }
+
+    public WasmFunction generate(MethodReference methodReference, RegularMethodNode methodAst) {
         ClassHolder cls = classSource.get(methodReference.getClassName());
         MethodHolder method = cls.getMethod(methodReference.getDescriptor());
 
-        RegularMethodNode methodAst = decompiler.decompileRegular(bodyMethod);
         WasmFunction function = context.getFunction(WasmMangling.mangleMethod(methodReference));
         int firstVariable = method.hasModifier(ElementModifier.STATIC) ? 1 : 0;
         for (int i = firstVariable; i < methodAst.getVariables().size(); ++i) {
@@ -18,6 +18,8 @@ package org.teavm.cache;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -78,6 +80,7 @@ import org.teavm.model.instructions.ArrayElementType;
 import org.teavm.model.util.VariableType;
 
 public class AstIO {
+    private static final int FORMAT_VERSION = 1;
     private static final ElementModifier[] nodeModifiers = ElementModifier.values();
     private static final BinaryOperation[] binaryOperations = BinaryOperation.values();
     private static final UnaryOperation[] unaryOperations = UnaryOperation.values();
@@ -85,13 +88,16 @@ public class AstIO {
     private final SymbolTable symbolTable;
     private final SymbolTable fileTable;
     private final Map<String, IdentifiedStatement> statementMap = new HashMap<>();
+    private int lastReadLine;
 
     public AstIO(SymbolTable symbolTable, SymbolTable fileTable) {
         this.symbolTable = symbolTable;
         this.fileTable = fileTable;
     }
 
-    public void write(DataOutput output, RegularMethodNode method) throws IOException {
+    public void write(OutputStream stream, RegularMethodNode method) throws IOException {
+        DataOutput output = new CompactDataOutput(stream);
+        output.writeByte(FORMAT_VERSION);
         output.writeInt(packModifiers(method.getModifiers()));
         output.writeShort(method.getVariables().size());
         for (VariableNode var : method.getVariables()) {
@@ -110,7 +116,9 @@ public class AstIO {
         output.writeUTF(variable.getName() != null ? variable.getName() : "");
     }
 
-    public RegularMethodNode read(DataInput input, MethodReference method) throws IOException {
+    public RegularMethodNode read(InputStream stream, MethodReference method) throws IOException {
+        DataInput input = new CompactDataInput(stream);
+        checkVersion(input);
         RegularMethodNode node = new RegularMethodNode(method);
         node.getModifiers().addAll(unpackModifiers(input.readInt()));
         int varCount = input.readShort();
@@ -125,33 +133,33 @@ public class AstIO {
         int index = input.readShort();
         VariableType type = VariableType.values()[input.readByte()];
         VariableNode variable = new VariableNode(index, type);
-        int nameCount = input.readByte();
-        for (int i = 0; i < nameCount; ++i) {
-            variable.setName(input.readUTF());
-            if (variable.getName().isEmpty()) {
-                variable.setName(null);
-            }
-        }
+        String name = input.readUTF();
+        variable.setName(!name.isEmpty() ? name : null);
         return variable;
     }
 
-    public void writeAsync(DataOutput output, AsyncMethodNode method) throws IOException {
+    public void writeAsync(OutputStream stream, AsyncMethodNode method) throws IOException {
+        DataOutput output = new CompactDataOutput(stream);
+        output.writeByte(FORMAT_VERSION);
         output.writeInt(packModifiers(method.getModifiers()));
         output.writeShort(method.getVariables().size());
         for (VariableNode var : method.getVariables()) {
             write(output, var);
         }
         try {
+             NodeWriter writer = new NodeWriter(output);
              output.writeShort(method.getBody().size());
              for (int i = 0; i < method.getBody().size(); ++i) {
-                 method.getBody().get(i).getStatement().acceptVisitor(new NodeWriter(output));
+                 method.getBody().get(i).getStatement().acceptVisitor(writer);
              }
         } catch (IOExceptionWrapper e) {
             throw new IOException("Error writing method body", e.getCause());
         }
     }
 
-    public AsyncMethodNode readAsync(DataInput input, MethodReference method) throws IOException {
+    public AsyncMethodNode readAsync(InputStream stream, MethodReference method) throws IOException {
+        DataInput input = new CompactDataInput(stream);
+        checkVersion(input);
         AsyncMethodNode node = new AsyncMethodNode(method);
         node.getModifiers().addAll(unpackModifiers(input.readInt()));
         int varCount = input.readShort();
@@ -167,6 +175,13 @@ public class AstIO {
         return node;
     }
 
+    private void checkVersion(DataInput input) throws IOException {
+        if (input.readByte() != FORMAT_VERSION) {
+            throw new IOException("Unsupported AST format");
+        }
+        lastReadLine = 0;
+    }
+
     private int packModifiers(Set<ElementModifier> modifiers) {
         int packed = 0;
         for (ElementModifier modifier : modifiers) {
@@ -187,6 +202,7 @@ public class AstIO {
 
     private class NodeWriter implements ExprVisitor, StatementVisitor {
         private final DataOutput output;
+        private int lastLine;
 
         NodeWriter(DataOutput output) {
             super();
@@ -203,7 +219,8 @@ public class AstIO {
                 output.writeShort(-1);
             } else {
                 output.writeShort(fileTable.lookup(location.getFileName()));
-                output.writeShort(location.getLine());
+                output.writeInt(location.getLine() - lastLine);
+                lastLine = location.getLine();
             }
         }
 
@@ -631,7 +648,8 @@ public class AstIO {
         if (fileIndex == -1) {
             return null;
         } else {
-            return new TextLocation(fileTable.at(fileIndex), input.readShort());
+            lastReadLine += input.readInt();
+            return new TextLocation(fileTable.at(fileIndex), lastReadLine);
         }
     }
 
@@ -818,7 +836,7 @@ public class AstIO {
                 BinaryExpr expr = new BinaryExpr();
                 expr.setOperation(binaryOperations[input.readByte()]);
                 byte valueType = input.readByte();
-                expr.setType(valueType > 0 ? OperationType.values()[valueType] : null);
+                expr.setType(valueType > 0 ? OperationType.values()[valueType - 1] : null);
                 expr.setFirstOperand(readExpr(input));
                 expr.setSecondOperand(readExpr(input));
                 return expr;
@@ -827,7 +845,7 @@ public class AstIO {
                 UnaryExpr expr = new UnaryExpr();
                 expr.setOperation(unaryOperations[input.readByte()]);
                 byte valueType = input.readByte();
-                expr.setType(valueType > 0 ? OperationType.values()[valueType] : null);
+                expr.setType(valueType > 0 ? OperationType.values()[valueType - 1] : null);
                 expr.setOperand(readExpr(input));
                 return expr;
             }
@@ -898,6 +916,7 @@ public class AstIO {
                 return parseInvocationExpr(InvocationType.DYNAMIC, input);
             case 17: {
                 QualificationExpr expr = new QualificationExpr();
+                expr.setQualified(readExpr(input));
                 String className = symbolTable.at(input.readInt());
                 String fieldName = symbolTable.at(input.readInt());
                 expr.setField(new FieldReference(className, fieldName));
@@ -905,7 +924,6 @@ public class AstIO {
             }
             case 18: {
                 QualificationExpr expr = new QualificationExpr();
-                expr.setQualified(readExpr(input));
                 String className = symbolTable.at(input.readInt());
                 String fieldName = symbolTable.at(input.readInt());
                 expr.setField(new FieldReference(className, fieldName));
@@ -0,0 +1,74 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.teavm.parsing.ClassHashProvider;
+
+/**
+ * <p>Writes and checks headers of cache entries. A header lists classes the entry depends on
+ * along with digests of their class files, so an entry stays valid as long as these classes have
+ * same content, no matter when or where their files were written.</p>
+ *
+ * <p>Caches that outlive a single build keep headers of their entries in memory, so that entries
+ * can be checked against digests of the next build without reading them again.</p>
+ */
+final class ClassDependencyHashes {
+    private ClassDependencyHashes() {
+    }
+
+    static Map<String, String> compute(Collection<String> classNames, ClassHashProvider hashProvider) {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (String className : classNames) {
+            String hash = hashProvider.getContentHash(className);
+            hashes.put(className, hash != null ? hash : "");
+        }
+        return hashes;
+    }
+
+    static void write(DataOutput output, Map<String, String> hashes) throws IOException {
+        output.writeShort(hashes.size());
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+    }
+
+    static Map<String, String> read(DataInput input) throws IOException {
+        int count = input.readShort();
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            String className = input.readUTF();
+            hashes.put(className, input.readUTF());
+        }
+        return hashes;
+    }
+
+    static boolean changed(Map<String, String> hashes, ClassHashProvider hashProvider) {
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            String actualHash = hashProvider.getContentHash(entry.getKey());
+            if (actualHash == null || !actualHash.equals(entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
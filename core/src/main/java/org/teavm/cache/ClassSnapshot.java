@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.teavm.model.ClassHolder;
+
+/**
+ * <p>Set of already parsed classes, stored along with digests of class files they were parsed from.
+ * Libraries can ship a snapshot in their jars as {@link #RESOURCE_NAME} resource, so that their classes
+ * are decoded from the snapshot instead of being parsed again by every build.</p>
+ *
+ * <p>Snapshot holds symbols shared by all classes followed by index and class data. Classes are decoded
+ * on request, so loading a snapshot only costs reading its bytes and index. Snapshots found in a class loader
+ * are read on first request and shared by all users of the class loader.</p>
+ */
+public class ClassSnapshot {
+    public static final String RESOURCE_NAME = "META-INF/teavm/classes.snapshot";
+    private static final int MAGIC = 0x5456_4353;
+    private static final int FORMAT_VERSION = 1;
+    private static final Map<ClassLoader, ClassSnapshot> loadedSnapshots = new WeakHashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private List<URL> pendingResources;
+    private volatile boolean loaded;
+
+    private ClassSnapshot() {
+    }
+
+    /**
+     * <p>Gets snapshot of all snapshot resources available in the given class loader. Resources are read
+     * on first request to the snapshot. Subsequent calls with the same class loader return the same snapshot.</p>
+     *
+     * @return snapshot that contains classes of all found snapshots. When several snapshots contain
+     * the same class, the first one wins. Empty snapshot when class loader has no snapshots
+     * or they could not be read.
+     */
+    public static ClassSnapshot load(ClassLoader classLoader) {
+        synchronized (loadedSnapshots) {
+            return loadedSnapshots.computeIfAbsent(classLoader, ClassSnapshot::findResources);
+        }
+    }
+
+    private static ClassSnapshot findResources(ClassLoader classLoader) {
+        ClassSnapshot snapshot = new ClassSnapshot();
+        try {
+            snapshot.pendingResources = Collections.list(classLoader.getResources(RESOURCE_NAME));
+        } catch (IOException e) {
+            // Snapshots are only an optimization, classes will be parsed
+            snapshot.pendingResources = new ArrayList<>();
+        }
+        return snapshot;
+    }
+
+    public static ClassSnapshot read(InputStream input) throws IOException {
+        ClassSnapshot snapshot = new ClassSnapshot();
+        snapshot.readPart(input);
+        snapshot.loaded = true;
+        return snapshot;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            try {
+                for (URL resource : pendingResources) {
+                    try (InputStream input = resource.openStream()) {
+                        readPart(input);
+                    }
+                }
+            } catch (IOException e) {
+                // Snapshots are only an optimization, classes will be parsed
+            }
+            pendingResources = null;
+            loaded = true;
+        }
+    }
+
+    private void readPart(InputStream stream) throws IOException {
+        byte[] data = readAll(stream);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+        DataInput input = new CompactDataInput(bytes);
+        if (input.readInt() != MAGIC || input.readByte() != FORMAT_VERSION) {
+            throw new IOException("Unsupported class snapshot format");
+        }
+        Part part = new Part(data, readTable(input), readTable(input));
+        int classCount = input.readInt();
+        String[] names = new String[classCount];
+        String[] hashes = new String[classCount];
+        int[] lengths = new int[classCount];
+        for (int i = 0; i < classCount; ++i) {
+            names[i] = input.readUTF();
+            hashes[i] = input.readUTF();
+            lengths[i] = input.readInt();
+        }
+        int offset = data.length - bytes.available();
+        for (int i = 0; i < classCount; ++i) {
+            entries.putIfAbsent(names[i], new Entry(part, hashes[i], offset, lengths[i]));
+            offset += lengths[i];
+        }
+        if (offset != data.length) {
+            throw new IOException("Class snapshot is corrupted");
+        }
+    }
+
+    private static ArraySymbolTable readTable(DataInput input) throws IOException {
+        String[] symbols = new String[input.readInt()];
+        for (int i = 0; i < symbols.length; ++i) {
+            symbols[i] = input.readUTF();
+        }
+        return new ArraySymbolTable(symbols);
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (true) {
+            int bytesRead = input.read(buffer);
+            if (bytesRead < 0) {
+                break;
+            }
+            output.write(buffer, 0, bytesRead);
+        }
+        return output.toByteArray();
+    }
+
+    public boolean contains(String name) {
+        ensureLoaded();
+        return entries.containsKey(name);
+    }
+
+    public boolean isEmpty() {
+        ensureLoaded();
+        return entries.isEmpty();
+    }
+
+    /**
+     * <p>Gets class from snapshot.</p>
+     *
+     * @param hash digest of class file the caller would parse otherwise.
+     * @return decoded class or <code>null</code> if there is no such class in the snapshot or it was built
+     * from a class file with different digest.
+     */
+    public ClassHolder get(String name, String hash) {
+        ensureLoaded();
+        Entry entry = entries.get(name);
+        if (entry == null || !entry.hash.equals(hash)) {
+            return null;
+        }
+        try {
+            return entry.part.classIO.read(new ByteArrayInputStream(entry.part.data, entry.offset, entry.length),
+                    name);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static class Builder {
+        private final InMemorySymbolTable symbolTable = new InMemorySymbolTable();
+        private final InMemorySymbolTable fileTable = new InMemorySymbolTable();
+        private final ClassIO classIO = new ClassIO(symbolTable, fileTable);
+        private final Map<String, String> hashes = new LinkedHashMap<>();
+        private final Map<String, byte[]> classData = new HashMap<>();
+
+        public Builder add(ClassHolder cls, String hash) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            classIO.write(output, cls);
+            hashes.put(cls.getName(), hash);
+            classData.put(cls.getName(), output.toByteArray());
+            return this;
+        }
+
+        public void write(OutputStream stream) throws IOException {
+            DataOutput output = new CompactDataOutput(stream);
+            output.writeInt(MAGIC);
+            output.writeByte(FORMAT_VERSION);
+            writeTable(output, symbolTable);
+            writeTable(output, fileTable);
+            output.writeInt(hashes.size());
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+                output.writeInt(classData.get(entry.getKey()).length);
+            }
+            for (String className : hashes.keySet()) {
+                output.write(classData.get(className));
+            }
+        }
+
+        private static void writeTable(DataOutput output, InMemorySymbolTable table) throws IOException {
+            output.writeInt(table.getSymbols().size());
+            for (String symbol : table.getSymbols()) {
+                output.writeUTF(symbol);
+            }
+        }
+    }
+
+    static class Part {
+        final byte[] data;
+        final ClassIO classIO;
+
+        Part(byte[] data, SymbolTable symbolTable, SymbolTable fileTable) {
+            this.data = data;
+            classIO = new ClassIO(symbolTable, fileTable);
+        }
+    }
+
+    static class Entry {
+        final Part part;
+        final String hash;
+        final int offset;
+        final int length;
+
+        Entry(Part part, String hash, int offset, int length) {
+            this.part = part;
+            this.hash = hash;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    static class ArraySymbolTable implements SymbolTable {
+        private final String[] symbols;
+
+        ArraySymbolTable(String[] symbols) {
+            this.symbols = symbols;
+        }
+
+        @Override
+        public String at(int index) {
+            return symbols[index];
+        }
+
+        @Override
+        public int lookup(String symbol) {
+            throw new UnsupportedOperationException("Class snapshot is read-only");
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>Reads data written by {@link CompactDataOutput}. Reads directly from the underlying stream
+ * without any read-ahead. The only exception is {@link #readLine()}, which looks one byte past
+ * a carriage return and keeps that byte for the next read.</p>
+ */
+class CompactDataInput implements DataInput {
+    private final InputStream input;
+    private int pushedBack = -1;
+
+    CompactDataInput(InputStream input) {
+        this.input = input;
+    }
+
+    private int read() throws IOException {
+        if (pushedBack >= 0) {
+            int b = pushedBack;
+            pushedBack = -1;
+            return b;
+        }
+        return input.read();
+    }
+
+    private int readRaw() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        if (len > 0 && pushedBack >= 0) {
+            b[off++] = (byte) read();
+            --len;
+        }
+        while (len > 0) {
+            int bytesRead = input.read(b, off, len);
+            if (bytesRead < 0) {
+                throw new EOFException();
+            }
+            off += bytesRead;
+            len -= bytesRead;
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        int skipped = 0;
+        while (skipped < n && read() >= 0) {
+            ++skipped;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readRaw() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        return (byte) readRaw();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readRaw();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        return (short) readSigned();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        return (char) readUnsigned();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        return readSigned();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = readRaw();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readFixedInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        long high = readFixedInt() & 0xFFFFFFFFL;
+        long low = readFixedInt() & 0xFFFFFFFFL;
+        return Double.longBitsToDouble((high << 32) | low);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n') {
+            if (c == '\r') {
+                int next = read();
+                if (next >= 0 && next != '\n') {
+                    pushedBack = next;
+                }
+                break;
+            }
+            sb.append((char) c);
+            c = read();
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        int length = readUnsigned();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i) {
+            chars[i] = readChar();
+        }
+        return new String(chars);
+    }
+
+    private int readSigned() throws IOException {
+        int value = readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readUnsigned() throws IOException {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = readRaw();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return value;
+    }
+
+    private int readFixedInt() throws IOException {
+        return (readRaw() << 24) | (readRaw() << 16) | (readRaw() << 8) | readRaw();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>{@link DataOutput} that writes shorts, chars, ints and longs as variable-length numbers (LEB128 of their
+ * zigzag encoding), so that small numbers, including small negative ones, take one or two bytes. Strings are
+ * written as a length followed by chars, each encoded the same way. Bytes, floats and doubles are written
+ * as is.</p>
+ *
+ * <p>Output written this way can only be read by {@link CompactDataInput}. Neither class buffers data, so
+ * it's fine to mix them with other streams over the same underlying stream.</p>
+ */
+class CompactDataOutput implements DataOutput {
+    private final OutputStream output;
+
+    CompactDataOutput(OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        output.write(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        output.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        output.write(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException {
+        output.write(v ? 1 : 0);
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException {
+        output.write(v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+        writeSigned((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+        writeUnsigned((char) v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+        writeSigned(v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+        long value = (v << 1) ^ (v >> 63);
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+        writeFixedInt(Float.floatToIntBits(v));
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+        long bits = Double.doubleToLongBits(v);
+        writeFixedInt((int) (bits >>> 32));
+        writeFixedInt((int) bits);
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException {
+        for (int i = 0; i < s.length(); ++i) {
+            output.write(s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException {
+        for (int i = 0; i < s.length(); ++i) {
+            writeChar(s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+        writeUnsigned(s.length());
+        writeChars(s);
+    }
+
+    private void writeSigned(int v) throws IOException {
+        writeUnsigned((v << 1) ^ (v >> 31));
+    }
+
+    private void writeUnsigned(int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            output.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        output.write(v);
+    }
+
+    private void writeFixedInt(int v) throws IOException {
+        output.write(v >>> 24);
+        output.write(v >>> 16);
+        output.write(v >>> 8);
+        output.write(v);
+    }
+}
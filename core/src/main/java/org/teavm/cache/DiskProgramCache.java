@@ -15,19 +15,12 @@
  */
 package org.teavm.cache;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -77,92 +70,107 @@ import org.teavm.model.instructions.RaiseInstruction;
 import org.teavm.model.instructions.StringConstantInstruction;
 import org.teavm.model.instructions.SwitchInstruction;
 import org.teavm.model.instructions.UnwrapArrayInstruction;
-import org.teavm.parsing.ClassDateProvider;
+import org.teavm.model.util.ProgramUtils;
+import org.teavm.parsing.ClassHashProvider;
 
 public class DiskProgramCache implements ProgramCache {
-    private final File directory;
+    private final PackedCacheStore store;
     private final ProgramIO programIO;
     private final Map<MethodReference, Item> cache = new HashMap<>();
     private final Set<MethodReference> newMethods = new HashSet<>();
-    private final ClassDateProvider classDateProvider;
+    private ClassHashProvider classHashProvider;
 
     public DiskProgramCache(File directory, SymbolTable symbolTable, SymbolTable fileTable,
-            ClassDateProvider classDateProvider) {
-        this.directory = directory;
+            ClassHashProvider classHashProvider) {
+        store = new PackedCacheStore(directory, "programs");
         programIO = new ProgramIO(symbolTable, fileTable);
-        this.classDateProvider = classDateProvider;
+        this.classHashProvider = classHashProvider;
+    }
+
+    /**
+     * <p>Prepares cache for another build. Programs that are kept in memory since previous builds
+     * are dropped when any class they depend on has changed, the rest are reused without reading them
+     * from disk again.</p>
+     *
+     * @param classHashProvider provides digests of class files of the next build.
+     */
+    public synchronized void update(ClassHashProvider classHashProvider) {
+        this.classHashProvider = classHashProvider;
+        cache.values().removeIf(item -> item.dependencies == null
+                || ClassDependencyHashes.changed(item.dependencies, classHashProvider));
+        newMethods.clear();
     }
 
     @Override
-    public Program get(MethodReference method) {
+    public synchronized Program get(MethodReference method) {
         Item item = cache.get(method);
         if (item == null) {
             item = new Item();
             cache.put(method, item);
-            File file = getMethodFile(method);
-            if (file.exists()) {
-                try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
-                    DataInput input = new DataInputStream(stream);
-                    int depCount = input.readShort();
-                    boolean dependenciesChanged = false;
-                    for (int i = 0; i < depCount; ++i) {
-                        String depClass = input.readUTF();
-                        Date depDate = classDateProvider.getModificationDate(depClass);
-                        if (depDate == null || depDate.after(new Date(file.lastModified()))) {
-                            dependenciesChanged = true;
-                            break;
-                        }
-                    }
-                    if (!dependenciesChanged) {
+            try (InputStream stream = store.read(method.toString())) {
+                if (stream != null) {
+                    DataInput input = new CompactDataInput(stream);
+                    Map<String, String> dependencies = ClassDependencyHashes.read(input);
+                    if (!ClassDependencyHashes.changed(dependencies, classHashProvider)) {
                         item.program = programIO.read(stream);
+                        item.dependencies = dependencies;
                     }
-                } catch (IOException e) {
-                    // we could not read program, just leave it empty
                 }
+            } catch (IOException e) {
+                // we could not read program, just leave it empty
             }
+        } else if (item.program != null && item.used) {
+            // Program was given to a previous build, which could modify it
+            return copy(item.program);
         }
+        item.used = true;
         return item.program;
     }
 
+    private static Program copy(Program program) {
+        Program copy = ProgramUtils.copy(program);
+        for (int i = 0; i < program.variableCount(); ++i) {
+            copy.variableAt(i).setRegister(program.variableAt(i).getRegister());
+        }
+        return copy;
+    }
+
     @Override
-    public void store(MethodReference method, Program program) {
+    public synchronized void store(MethodReference method, Program program) {
         Item item = new Item();
         cache.put(method, item);
         item.program = program;
+        item.used = true;
         newMethods.add(method);
     }
 
     public void flush() throws IOException {
         for (MethodReference method : newMethods) {
-            File file = getMethodFile(method);
             ProgramDependencyAnalyzer analyzer = new ProgramDependencyAnalyzer();
             analyzer.dependencies.add(method.getClassName());
-            Program program = cache.get(method).program;
+            Item item = cache.get(method);
+            Program program = item.program;
             for (int i = 0; i < program.basicBlockCount(); ++i) {
                 BasicBlock block = program.basicBlockAt(i);
                 for (Instruction insn : block) {
                     insn.acceptVisitor(analyzer);
                 }
             }
-            file.getParentFile().mkdirs();
-            try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
-                DataOutput output = new DataOutputStream(stream);
-                output.writeShort(analyzer.dependencies.size());
-                for (String dep : analyzer.dependencies) {
-                    output.writeUTF(dep);
-                }
-                programIO.write(program, stream);
-            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutput output = new CompactDataOutput(stream);
+            item.dependencies = ClassDependencyHashes.compute(analyzer.dependencies, classHashProvider);
+            ClassDependencyHashes.write(output, item.dependencies);
+            programIO.write(program, stream);
+            store.write(method.toString(), stream.toByteArray());
         }
-    }
-
-    private File getMethodFile(MethodReference method) {
-        File dir = new File(directory, method.getClassName().replace('.', '/'));
-        return new File(dir, FileNameEncoder.encodeFileName(method.getDescriptor().toString()) + ".teavm-opt");
+        newMethods.clear();
+        store.flush();
     }
 
     static class Item {
         Program program;
+        Map<String, String> dependencies;
+        boolean used;
     }
 
     static class ProgramDependencyAnalyzer implements InstructionVisitor {
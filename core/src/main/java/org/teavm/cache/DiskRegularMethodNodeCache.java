@@ -15,17 +15,12 @@
  */
 package org.teavm.cache;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.DataOutput;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -38,47 +33,67 @@ import org.teavm.ast.RecursiveVisitor;
 import org.teavm.ast.RegularMethodNode;
 import org.teavm.ast.cache.MethodNodeCache;
 import org.teavm.model.MethodReference;
-import org.teavm.parsing.ClassDateProvider;
+import org.teavm.parsing.ClassHashProvider;
 
 public class DiskRegularMethodNodeCache implements MethodNodeCache {
-    private final File directory;
+    private final PackedCacheStore store;
     private final AstIO astIO;
-    private final ClassDateProvider classDateProvider;
+    private ClassHashProvider classHashProvider;
     private final Map<MethodReference, Item> cache = new HashMap<>();
     private final Map<MethodReference, AsyncItem> asyncCache = new HashMap<>();
     private final Set<MethodReference> newMethods = new HashSet<>();
     private final Set<MethodReference> newAsyncMethods = new HashSet<>();
 
     public DiskRegularMethodNodeCache(File directory, SymbolTable symbolTable, SymbolTable fileTable,
-            ClassDateProvider classDateProvider) {
-        this.directory = directory;
+            ClassHashProvider classHashProvider) {
+        store = new PackedCacheStore(directory, "ast");
         astIO = new AstIO(symbolTable, fileTable);
-        this.classDateProvider = classDateProvider;
+        this.classHashProvider = classHashProvider;
+    }
+
+    /**
+     * <p>Prepares cache for another build. Nodes that are kept in memory since previous builds
+     * are dropped when any class they depend on has changed, the rest are reused without reading them
+     * from disk again.</p>
+     *
+     * @param classHashProvider provides digests of class files of the next build.
+     */
+    public synchronized void update(ClassHashProvider classHashProvider) {
+        this.classHashProvider = classHashProvider;
+        cache.values().removeIf(item -> isStale(item.dependencies));
+        asyncCache.values().removeIf(item -> isStale(item.dependencies));
+        newMethods.clear();
+        newAsyncMethods.clear();
+    }
+
+    private boolean isStale(Map<String, String> dependencies) {
+        return dependencies == null || ClassDependencyHashes.changed(dependencies, classHashProvider);
     }
 
     @Override
-    public RegularMethodNode get(MethodReference methodReference) {
+    public synchronized RegularMethodNode get(MethodReference methodReference) {
         Item item = cache.get(methodReference);
         if (item == null) {
             item = new Item();
             cache.put(methodReference, item);
-            File file = getMethodFile(methodReference, false);
-            if (file.exists()) {
-                try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
-                    DataInput input = new DataInputStream(stream);
-                    if (!checkIfDependenciesChanged(input, file)) {
-                        item.node = astIO.read(input, methodReference);
+            try (InputStream stream = store.read(getKey(methodReference, false))) {
+                if (stream != null) {
+                    DataInput input = new CompactDataInput(stream);
+                    Map<String, String> dependencies = ClassDependencyHashes.read(input);
+                    if (!ClassDependencyHashes.changed(dependencies, classHashProvider)) {
+                        item.node = astIO.read(stream, methodReference);
+                        item.dependencies = dependencies;
                     }
-                } catch (IOException e) {
-                    // we could not read program, just leave it empty
                 }
+            } catch (IOException e) {
+                // we could not read program, just leave it empty
             }
         }
         return item.node;
     }
 
     @Override
-    public void store(MethodReference methodReference, RegularMethodNode node) {
+    public synchronized void store(MethodReference methodReference, RegularMethodNode node) {
         Item item = new Item();
         item.node = node;
         cache.put(methodReference, item);
@@ -86,40 +101,29 @@ public class DiskRegularMethodNodeCache implements MethodNodeCache {
     }
 
     @Override
-    public AsyncMethodNode getAsync(MethodReference methodReference) {
+    public synchronized AsyncMethodNode getAsync(MethodReference methodReference) {
         AsyncItem item = asyncCache.get(methodReference);
         if (item == null) {
             item = new AsyncItem();
             asyncCache.put(methodReference, item);
-            File file = getMethodFile(methodReference, true);
-            if (file.exists()) {
-                try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
-                    DataInput input = new DataInputStream(stream);
-                    if (!checkIfDependenciesChanged(input, file)) {
-                        item.node = astIO.readAsync(input, methodReference);
+            try (InputStream stream = store.read(getKey(methodReference, true))) {
+                if (stream != null) {
+                    DataInput input = new CompactDataInput(stream);
+                    Map<String, String> dependencies = ClassDependencyHashes.read(input);
+                    if (!ClassDependencyHashes.changed(dependencies, classHashProvider)) {
+                        item.node = astIO.readAsync(stream, methodReference);
+                        item.dependencies = dependencies;
                     }
-                } catch (IOException e) {
-                    // we could not read program, just leave it empty
                 }
+            } catch (IOException e) {
+                // we could not read program, just leave it empty
             }
         }
         return item.node;
     }
 
-    private boolean checkIfDependenciesChanged(DataInput input, File file) throws IOException {
-        int depCount = input.readShort();
-        for (int i = 0; i < depCount; ++i) {
-            String depClass = input.readUTF();
-            Date depDate = classDateProvider.getModificationDate(depClass);
-            if (depDate == null || depDate.after(new Date(file.lastModified()))) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     @Override
-    public void storeAsync(MethodReference methodReference, AsyncMethodNode node) {
+    public synchronized void storeAsync(MethodReference methodReference, AsyncMethodNode node) {
         AsyncItem item = new AsyncItem();
         item.node = node;
         asyncCache.put(methodReference, item);
@@ -128,41 +132,40 @@ public class DiskRegularMethodNodeCache implements MethodNodeCache {
 
     public void flush() throws IOException {
         for (MethodReference method : newMethods) {
-            File file = getMethodFile(method, true);
             AstDependencyAnalyzer analyzer = new AstDependencyAnalyzer();
-            RegularMethodNode node = cache.get(method).node;
+            Item item = cache.get(method);
+            RegularMethodNode node = item.node;
             node.getBody().acceptVisitor(analyzer);
             analyzer.dependencies.add(method.getClassName());
-            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-                output.writeShort(analyzer.dependencies.size());
-                for (String dependency : analyzer.dependencies) {
-                    output.writeUTF(dependency);
-                }
-                astIO.write(output, node);
-            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutput output = new CompactDataOutput(stream);
+            item.dependencies = ClassDependencyHashes.compute(analyzer.dependencies, classHashProvider);
+            ClassDependencyHashes.write(output, item.dependencies);
+            astIO.write(stream, node);
+            store.write(getKey(method, false), stream.toByteArray());
         }
         for (MethodReference method : newAsyncMethods) {
-            File file = getMethodFile(method, true);
             AstDependencyAnalyzer analyzer = new AstDependencyAnalyzer();
-            AsyncMethodNode node = asyncCache.get(method).node;
+            AsyncItem item = asyncCache.get(method);
+            AsyncMethodNode node = item.node;
             for (AsyncMethodPart part : node.getBody()) {
                 part.getStatement().acceptVisitor(analyzer);
             }
             analyzer.dependencies.add(method.getClassName());
-            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-                output.writeShort(analyzer.dependencies.size());
-                for (String dependency : analyzer.dependencies) {
-                    output.writeUTF(dependency);
-                }
-                astIO.writeAsync(output, node);
-            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            DataOutput output = new CompactDataOutput(stream);
+            item.dependencies = ClassDependencyHashes.compute(analyzer.dependencies, classHashProvider);
+            ClassDependencyHashes.write(output, item.dependencies);
+            astIO.writeAsync(stream, node);
+            store.write(getKey(method, true), stream.toByteArray());
         }
+        newMethods.clear();
+        newAsyncMethods.clear();
+        store.flush();
     }
 
-    private File getMethodFile(MethodReference method, boolean async) {
-        File dir = new File(directory, method.getClassName().replace('.', '/'));
-        return new File(dir, FileNameEncoder.encodeFileName(method.getDescriptor().toString()) + ".teavm-ast"
-                + (async ? "-async" : ""));
+    private static String getKey(MethodReference method, boolean async) {
+        return async ? "async:" + method : method.toString();
     }
 
     private static class AstDependencyAnalyzer extends RecursiveVisitor {
@@ -183,9 +186,11 @@ public class DiskRegularMethodNodeCache implements MethodNodeCache {
 
     private static class Item {
         RegularMethodNode node;
+        Map<String, String> dependencies;
     }
 
     private static class AsyncItem {
         AsyncMethodNode node;
+        Map<String, String> dependencies;
     }
 }
@@ -1,5 +1,5 @@
 /*
- *  Copyright 2014 Alexey Andreev.
+ *  Copyright 2013 Alexey Andreev.
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -15,87 +15,218 @@
  */
 package org.teavm.cache;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * <p>Symbol table stored in two files. Data file contains UTF-8 encoded symbols one after another and is
+ * only appended to. Index file (data file name with <code>.index</code> suffix) contains hash codes and
+ * offsets of symbols, followed by open addressing hash table that maps hash codes to symbol indexes.</p>
+ *
+ * <p>{@link #update()} reads index and memory-maps data file, without decoding any symbols.
+ * {@link #at(int)} decodes a single symbol on first request, {@link #lookup(String)} probes hash table and
+ * decodes only symbols with the same hash code.</p>
  *
  * @author Alexey Andreev
  */
 public class FileSymbolTable implements SymbolTable {
+    private static final int MAGIC = 0x5456_5359;
+    private static final int FORMAT_VERSION = 1;
     private File file;
-    private List<String> symbols = new ArrayList<>();
-    private Map<String, Integer> symbolMap = new HashMap<>();
-    private int firstUnstoredIndex;
+    private File indexFile;
+    private int storedCount;
+    private int[] hashes = new int[0];
+    private int[] offsets = { 0 };
+    private int[] table = new int[0];
+    private ByteBuffer data;
+    private String[] decodedSymbols = new String[0];
+    private List<String> newSymbols = new ArrayList<>();
+    private Map<String, Integer> newSymbolMap = new HashMap<>();
 
     public FileSymbolTable(File file) {
         this.file = file;
+        this.indexFile = new File(file.getPath() + ".index");
     }
 
-    public void update() throws IOException {
-        symbols.clear();
-        symbolMap.clear();
-        firstUnstoredIndex = 0;
-        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            while (true) {
-                int length = input.read();
-                if (length == -1) {
-                    break;
-                }
-                length = ((length & 0xFF) << 8) | (input.read() & 0xFF);
-                StringBuilder sb = new StringBuilder();
-                for (int i = 0; i < length; ++i) {
-                    sb.append(input.readChar());
-                }
-                String symbol = sb.toString();
-                symbolMap.put(symbol, symbols.size());
-                symbols.add(symbol);
-                firstUnstoredIndex = symbols.size();
+    public synchronized void update() throws IOException {
+        reset();
+        if (!indexFile.exists()) {
+            throw new IOException("Symbol table index not found: " + indexFile);
+        }
+        int[] header;
+        IntBuffer index;
+        try (RandomAccessFile input = new RandomAccessFile(indexFile, "r")) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) input.length());
+            input.getChannel().read(buffer, 0);
+            buffer.flip();
+            index = buffer.asIntBuffer();
+            header = new int[4];
+            if (index.remaining() < header.length) {
+                throw new IOException("Symbol table index is truncated: " + indexFile);
+            }
+            index.get(header);
+        }
+        if (header[0] != MAGIC || header[1] != FORMAT_VERSION) {
+            throw new IOException("Unsupported symbol table format: " + indexFile);
+        }
+        int count = header[2];
+        int tableSize = header[3];
+        if (index.remaining() < count + (count + 1) + tableSize) {
+            throw new IOException("Symbol table index is truncated: " + indexFile);
+        }
+        int[] newHashes = new int[count];
+        int[] newOffsets = new int[count + 1];
+        int[] newTable = new int[tableSize];
+        index.get(newHashes);
+        index.get(newOffsets);
+        index.get(newTable);
+
+        int dataLength = newOffsets[count];
+        ByteBuffer newData;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            if (input.length() < dataLength) {
+                throw new IOException("Symbol table is truncated: " + file);
             }
+            newData = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, dataLength);
         }
+
+        storedCount = count;
+        hashes = newHashes;
+        offsets = newOffsets;
+        table = newTable;
+        data = newData;
+        decodedSymbols = new String[count];
     }
 
-    public void flush() throws IOException {
-        if (firstUnstoredIndex >= symbols.size()) {
+    private void reset() {
+        storedCount = 0;
+        hashes = new int[0];
+        offsets = new int[] { 0 };
+        table = new int[0];
+        data = null;
+        decodedSymbols = new String[0];
+        newSymbols.clear();
+        newSymbolMap.clear();
+    }
+
+    public synchronized void flush() throws IOException {
+        if (newSymbols.isEmpty()) {
             return;
         }
+
+        int count = storedCount + newSymbols.size();
+        int[] newHashes = new int[count];
+        int[] newOffsets = new int[count + 1];
+        System.arraycopy(hashes, 0, newHashes, 0, storedCount);
+        System.arraycopy(offsets, 0, newOffsets, 0, storedCount + 1);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(offsets[storedCount]);
+            int offset = offsets[storedCount];
+            for (int i = 0; i < newSymbols.size(); ++i) {
+                String symbol = newSymbols.get(i);
+                byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+                output.write(bytes);
+                offset += bytes.length;
+                newHashes[storedCount + i] = symbol.hashCode();
+                newOffsets[storedCount + i + 1] = offset;
+            }
+        }
+
+        int tableSize = 16;
+        while (tableSize < count * 2) {
+            tableSize *= 2;
+        }
+        int[] newTable = new int[tableSize];
+        for (int i = 0; i < count; ++i) {
+            int slot = newHashes[i] & (tableSize - 1);
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            newTable[slot] = i + 1;
+        }
+
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
         try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
-                new FileOutputStream(file, true)))) {
-            while (firstUnstoredIndex < symbols.size()) {
-                String symbol = symbols.get(firstUnstoredIndex);
-                output.writeByte((symbol.length() >> 8) & 0xFF);
-                output.writeByte(symbol.length() & 0xFF);
-                for (int i = 0; i < symbol.length(); ++i) {
-                    output.writeChar(symbol.charAt(i));
-                }
-                firstUnstoredIndex++;
+                new FileOutputStream(tmpFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(count);
+            output.writeInt(tableSize);
+            for (int hash : newHashes) {
+                output.writeInt(hash);
+            }
+            for (int offset : newOffsets) {
+                output.writeInt(offset);
+            }
+            for (int entry : newTable) {
+                output.writeInt(entry);
             }
         }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        update();
     }
 
     @Override
-    public String at(int index) {
-        return symbols.get(index);
+    public synchronized String at(int index) {
+        if (index >= storedCount) {
+            return newSymbols.get(index - storedCount);
+        }
+        String symbol = decodedSymbols[index];
+        if (symbol == null) {
+            int start = offsets[index];
+            byte[] bytes = new byte[offsets[index + 1] - start];
+            ByteBuffer buffer = data.duplicate();
+            buffer.position(start);
+            buffer.get(bytes);
+            symbol = new String(bytes, StandardCharsets.UTF_8);
+            decodedSymbols[index] = symbol;
+        }
+        return symbol;
     }
 
     @Override
-    public int lookup(String symbol) {
-        Integer index = symbolMap.get(symbol);
-        if (index == null) {
-            index = symbols.size();
-            symbolMap.put(symbol, index);
-            symbols.add(symbol);
-        }
-        return index;
+    public synchronized int lookup(String symbol) {
+        int index = findStored(symbol);
+        if (index >= 0) {
+            return index;
+        }
+        Integer newIndex = newSymbolMap.get(symbol);
+        if (newIndex == null) {
+            newIndex = storedCount + newSymbols.size();
+            newSymbolMap.put(symbol, newIndex);
+            newSymbols.add(symbol);
+        }
+        return newIndex;
+    }
+
+    private int findStored(String symbol) {
+        if (table.length == 0) {
+            return -1;
+        }
+        int hash = symbol.hashCode();
+        int slot = hash & (table.length - 1);
+        while (table[slot] != 0) {
+            int index = table[slot] - 1;
+            if (hashes[index] == hash && at(index).equals(symbol)) {
+                return index;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return -1;
     }
 }
@@ -0,0 +1,333 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <p>Key-value store that keeps all cache entries of a kind in a single append-only segment file.
+ * Separate index file maps keys to their locations in the segment. Segment is memory-mapped, so reading
+ * an entry costs a lookup in the index instead of opening a file.</p>
+ *
+ * <p>New entries are kept in memory until {@link #flush()}, which appends them to the segment. Entries that
+ * were overwritten leave garbage in the segment; when there is more garbage than live data, flush
+ * writes live entries to a new segment file and removes the old one. Existing bytes of a segment are never
+ * changed, since streams returned by {@link #read(String)} may still refer to them after flush.</p>
+ *
+ * <p>Store can optionally deflate entries as they are written to the segment. Entries that don't get
+ * smaller are stored as is. Compressed entries are inflated while they are read, directly from
+ * the mapped segment.</p>
+ */
+public class PackedCacheStore {
+    private static final int FORMAT_VERSION = 2;
+    private static final long MIN_GARBAGE_TO_COMPACT = 1 << 20;
+    private final File directory;
+    private final String name;
+    private final boolean compressed;
+    private int generation;
+    private long segmentLength;
+    private long liveLength;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, byte[]> pendingEntries = new LinkedHashMap<>();
+    private ByteBuffer segment;
+
+    public PackedCacheStore(File directory, String name) {
+        this(directory, name, false);
+    }
+
+    public PackedCacheStore(File directory, String name, boolean compressed) {
+        this.directory = directory;
+        this.name = name;
+        this.compressed = compressed;
+        try {
+            readIndex();
+        } catch (IOException e) {
+            // Index is missing or corrupted, start with empty cache
+            generation = 0;
+            segmentLength = 0;
+            liveLength = 0;
+            entries.clear();
+        }
+    }
+
+    private void readIndex() throws IOException {
+        File indexFile = getIndexFile();
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported cache index format");
+            }
+            generation = input.readInt();
+            segmentLength = input.readLong();
+            if (getSegmentFile(generation).length() < segmentLength) {
+                throw new IOException("Cache segment is truncated");
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = input.readUTF();
+                Entry entry = new Entry(input.readLong(), input.readInt(), input.readBoolean());
+                entries.put(key, entry);
+                liveLength += entry.length;
+            }
+        }
+        deleteStaleSegments();
+    }
+
+    public synchronized InputStream read(String key) throws IOException {
+        byte[] pendingData = pendingEntries.get(key);
+        if (pendingData != null) {
+            return new ByteArrayInputStream(pendingData);
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        ByteBuffer buffer = getSegment().duplicate();
+        buffer.position((int) entry.offset);
+        buffer.limit((int) entry.offset + entry.length);
+        InputStream input = new ByteBufferInputStream(buffer.slice());
+        return entry.compressed ? new InflaterInputStream(input) : input;
+    }
+
+    public synchronized void write(String key, byte[] data) {
+        pendingEntries.put(key, data);
+    }
+
+    public synchronized void flush() throws IOException {
+        if (pendingEntries.isEmpty()) {
+            return;
+        }
+        for (String key : pendingEntries.keySet()) {
+            Entry oldEntry = entries.remove(key);
+            if (oldEntry != null) {
+                liveLength -= oldEntry.length;
+            }
+        }
+
+        int oldGeneration = generation;
+        long garbageLength = segmentLength - liveLength;
+        boolean needsCompaction = garbageLength >= MIN_GARBAGE_TO_COMPACT && garbageLength > liveLength;
+        if (!needsCompaction && getSegmentFile(generation).length() > segmentLength) {
+            // Previous flush was interrupted before it could update index. Segment can't be truncated,
+            // since streams returned by read may still refer to its mapping, so switch to a new one instead.
+            needsCompaction = true;
+        }
+        directory.mkdirs();
+        if (needsCompaction) {
+            compact();
+        }
+
+        File segmentFile = getSegmentFile(generation);
+        Deflater deflater = compressed ? new Deflater() : null;
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(segmentFile, true))) {
+            for (Map.Entry<String, byte[]> pendingEntry : pendingEntries.entrySet()) {
+                byte[] data = pendingEntry.getValue();
+                boolean entryCompressed = false;
+                if (deflater != null) {
+                    byte[] compressedData = deflate(deflater, data);
+                    if (compressedData.length < data.length) {
+                        data = compressedData;
+                        entryCompressed = true;
+                    }
+                }
+                output.write(data);
+                entries.put(pendingEntry.getKey(), new Entry(segmentLength, data.length, entryCompressed));
+                segmentLength += data.length;
+                liveLength += data.length;
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        pendingEntries.clear();
+        segment = null;
+
+        writeIndex();
+        if (oldGeneration != generation) {
+            // Some systems don't allow to delete a file while it's mapped. In this case old segment, which is
+            // not referenced by index anymore, gets deleted next time the store is opened.
+            getSegmentFile(oldGeneration).delete();
+        }
+    }
+
+    private void compact() throws IOException {
+        int newGeneration = generation + 1;
+        Map<String, Entry> newEntries = new LinkedHashMap<>();
+        long newLength = 0;
+        ByteBuffer oldSegment = entries.isEmpty() ? null : getSegment();
+        File newSegmentFile = getSegmentFile(newGeneration);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(newSegmentFile))) {
+            byte[] buffer = new byte[4096];
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                ByteBuffer source = oldSegment.duplicate();
+                source.position((int) entry.offset);
+                source.limit((int) entry.offset + entry.length);
+                while (source.hasRemaining()) {
+                    int chunkSize = Math.min(buffer.length, source.remaining());
+                    source.get(buffer, 0, chunkSize);
+                    output.write(buffer, 0, chunkSize);
+                }
+                newEntries.put(mapEntry.getKey(), new Entry(newLength, entry.length, entry.compressed));
+                newLength += entry.length;
+            }
+        }
+        entries.clear();
+        entries.putAll(newEntries);
+        generation = newGeneration;
+        segmentLength = newLength;
+        liveLength = newLength;
+        segment = null;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 16);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            output.write(buffer, 0, length);
+        }
+        return output.toByteArray();
+    }
+
+    private void writeIndex() throws IOException {
+        File indexFile = getIndexFile();
+        File tmpFile = new File(directory, name + ".pack.index.tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(generation);
+            output.writeLong(segmentLength);
+            output.writeInt(entries.size());
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                output.writeUTF(mapEntry.getKey());
+                output.writeLong(mapEntry.getValue().offset);
+                output.writeInt(mapEntry.getValue().length);
+                output.writeBoolean(mapEntry.getValue().compressed);
+            }
+        }
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteStaleSegments() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        String currentSegmentName = getSegmentFile(generation).getName();
+        List<File> staleSegments = new ArrayList<>();
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.startsWith(name + ".") && fileName.endsWith(".pack") && !fileName.equals(currentSegmentName)) {
+                staleSegments.add(file);
+            }
+        }
+        for (File file : staleSegments) {
+            file.delete();
+        }
+    }
+
+    private ByteBuffer getSegment() throws IOException {
+        if (segment == null) {
+            if (segmentLength > Integer.MAX_VALUE) {
+                throw new IOException("Cache segment is too large");
+            }
+            try (RandomAccessFile file = new RandomAccessFile(getSegmentFile(generation), "r")) {
+                segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, segmentLength);
+            }
+        }
+        return segment;
+    }
+
+    private File getIndexFile() {
+        return new File(directory, name + ".pack.index");
+    }
+
+    private File getSegmentFile(int generation) {
+        return new File(directory, name + "." + generation + ".pack");
+    }
+
+    static class Entry {
+        final long offset;
+        final int length;
+        final boolean compressed;
+
+        Entry(long offset, int length, boolean compressed) {
+            this.offset = offset;
+            this.length = length;
+            this.compressed = compressed;
+        }
+    }
+
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -16,9 +16,7 @@
 package org.teavm.cache;
 
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -86,6 +84,7 @@ import org.teavm.model.instructions.SwitchTableEntry;
 import org.teavm.model.instructions.UnwrapArrayInstruction;
 
 public class ProgramIO {
+    private static final int FORMAT_VERSION = 1;
     private SymbolTable symbolTable;
     private SymbolTable fileTable;
     private static BinaryOperation[] binaryOperations = BinaryOperation.values();
@@ -102,7 +101,8 @@ public class ProgramIO {
     }
 
     public void write(Program program, OutputStream output) throws IOException {
-        DataOutput data = new DataOutputStream(output);
+        DataOutput data = new CompactDataOutput(output);
+        data.writeByte(FORMAT_VERSION);
         data.writeShort(program.variableCount());
         data.writeShort(program.basicBlockCount());
         for (int i = 0; i < program.variableCount(); ++i) {
@@ -130,6 +130,7 @@ public class ProgramIO {
                 data.writeShort(tryCatch.getHandler().getIndex());
             }
             TextLocation location = null;
+            int lastLine = 0;
             InstructionWriter insnWriter = new InstructionWriter(data);
             for (Instruction insn : basicBlock) {
                 try {
@@ -140,7 +141,8 @@ public class ProgramIO {
                         } else {
                             data.writeByte(-3);
                             data.writeShort(fileTable.lookup(location.getFileName()));
-                            data.writeShort(location.getLine());
+                            data.writeInt(location.getLine() - lastLine);
+                            lastLine = location.getLine();
                         }
                     }
                     insn.acceptVisitor(insnWriter);
@@ -153,7 +155,10 @@ public class ProgramIO {
     }
 
     public Program read(InputStream input) throws IOException {
-        DataInput data = new DataInputStream(input);
+        DataInput data = new CompactDataInput(input);
+        if (data.readByte() != FORMAT_VERSION) {
+            throw new IOException("Unsupported program format");
+        }
         Program program = new Program();
         int varCount = data.readShort();
         int basicBlockCount = data.readShort();
@@ -202,6 +207,7 @@ public class ProgramIO {
             }
 
             TextLocation location = null;
+            int lastLine = 0;
             insnLoop: while (true) {
                 byte insnType = data.readByte();
                 switch (insnType) {
@@ -212,8 +218,8 @@ public class ProgramIO {
                         break;
                     case -3: {
                         String file = fileTable.at(data.readShort());
-                        short line = data.readShort();
-                        location = new TextLocation(file, line);
+                        lastLine += data.readInt();
+                        location = new TextLocation(file, lastLine);
                         break;
                     }
                     default: {
@@ -535,6 +541,7 @@ public class ProgramIO {
                 }
                 output.writeInt(symbolTable.lookup(insn.getField().className));
                 output.writeInt(symbolTable.lookup(insn.getField().fieldName));
+                output.writeInt(symbolTable.lookup(insn.getFieldType().toString()));
                 output.writeShort(insn.getValue().getIndex());
             } catch (IOException e) {
                 throw new IOExceptionWrapper(e);
@@ -631,7 +638,7 @@ public class ProgramIO {
             try {
                 output.writeByte(41);
                 output.writeShort(insn.getReceiver() != null ? insn.getReceiver().getIndex() : -1);
-                output.writeShort(insn.getInstance().getIndex());
+                output.writeShort(insn.getInstance() != null ? insn.getInstance().getIndex() : -1);
                 output.writeInt(symbolTable.lookup(insn.getMethod().toString()));
                 for (int i = 0; i < insn.getArguments().size(); ++i) {
                     output.writeShort(insn.getArguments().get(i).getIndex());
@@ -739,8 +746,9 @@ public class ProgramIO {
                     output.writeInt(symbolTable.lookup(handle.getValueType().toString()));
                     break;
                 default:
+                    output.writeInt(symbolTable.lookup(handle.getName()));
                     output.writeInt(symbolTable.lookup(new MethodDescriptor(handle.getName(),
-                            handle.signature()).toString()));
+                            handle.signature()).signatureToString()));
                     break;
             }
         }
@@ -1116,7 +1124,8 @@ public class ProgramIO {
                 InvokeDynamicInstruction insn = new InvokeDynamicInstruction();
                 short receiver = input.readShort();
                 insn.setReceiver(receiver >= 0 ? program.variableAt(receiver) : null);
-                insn.setInstance(program.variableAt(input.readShort()));
+                short instance = input.readShort();
+                insn.setInstance(instance >= 0 ? program.variableAt(instance) : null);
                 insn.setMethod(MethodDescriptor.parse(symbolTable.at(input.readInt())));
                 int argsCount = insn.getMethod().parameterCount();
                 for (int i = 0; i < argsCount; ++i) {
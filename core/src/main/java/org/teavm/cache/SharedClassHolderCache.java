@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderSource;
+import org.teavm.parsing.ClassHashProvider;
+
+/**
+ * <p>In-memory cache of parsed classes that can be shared by several builds running in the same JVM,
+ * for example, by consecutive builds in a build daemon or IDE. Classes are keyed by name and digest of
+ * their class files, so a build gets a cached class only when its class file has same content as one
+ * the class was parsed from.</p>
+ *
+ * <p>Cache keeps at most given number of classes, evicting least recently used ones. Each build
+ * should get its own view of the cache by calling {@link #wrap(ClassHolderSource, ClassHashProvider)}.
+ * Classes returned from cache are shared between builds, so they must not be modified. This is
+ * the case for class sources passed to {@link org.teavm.vm.TeaVM}, which copies classes before
+ * transforming them.</p>
+ */
+public class SharedClassHolderCache {
+    private final int maxSize;
+    private final Map<String, ClassHolder> classes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public SharedClassHolderCache(int maxSize) {
+        this.maxSize = maxSize;
+        classes = new LinkedHashMap<String, ClassHolder>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClassHolder> eldest) {
+                if (size() > SharedClassHolderCache.this.maxSize) {
+                    ++evictionCount;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * <p>Creates class source for a single build. The source takes classes from this cache, when their class
+     * files did not change, and from the given source otherwise. Classes taken from the given source are
+     * put to this cache.</p>
+     *
+     * @param innerSource source of parsed and pre-optimized classes.
+     * @param hashProvider provides digests of class files that are used to check whether cached classes
+     * are up to date.
+     */
+    public ClassHolderSource wrap(ClassHolderSource innerSource, ClassHashProvider hashProvider) {
+        return new View(innerSource, hashProvider);
+    }
+
+    private synchronized ClassHolder get(String key) {
+        ClassHolder cls = classes.get(key);
+        if (cls != null) {
+            ++hitCount;
+        } else {
+            ++missCount;
+        }
+        return cls;
+    }
+
+    private synchronized void put(String key, ClassHolder cls) {
+        classes.put(key, cls);
+    }
+
+    public synchronized int size() {
+        return classes.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized void clear() {
+        classes.clear();
+    }
+
+    private class View implements ClassHolderSource {
+        private final ClassHolderSource innerSource;
+        private final ClassHashProvider hashProvider;
+        private final Map<String, ClassHolder> localCache = new HashMap<>();
+
+        View(ClassHolderSource innerSource, ClassHashProvider hashProvider) {
+            this.innerSource = innerSource;
+            this.hashProvider = hashProvider;
+        }
+
+        @Override
+        public ClassHolder get(String name) {
+            ClassHolder cls = localCache.get(name);
+            if (cls != null || localCache.containsKey(name)) {
+                return cls;
+            }
+
+            String hash = hashProvider.getContentHash(name);
+            if (hash == null) {
+                cls = innerSource.get(name);
+            } else {
+                String key = name + "@" + hash;
+                cls = SharedClassHolderCache.this.get(key);
+                if (cls == null) {
+                    cls = innerSource.get(name);
+                    if (cls != null) {
+                        put(key, cls);
+                    }
+                }
+            }
+            localCache.put(name, cls);
+            return cls;
+        }
+    }
+}
@@ -201,7 +201,7 @@ public final class GraphUtils {
                 headerIndex[node] = hdr;
 
                 if (hdr == visitIndex[node]) {
-                    IntegerArray componentMembers = new IntegerArray(graph.size());
+                    IntegerArray componentMembers = new IntegerArray(4);
                     int componentMember;
                     do {
                         componentMember = currentComponent.pop();
@@ -0,0 +1,224 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * <p>Runs independent pieces of work on a bounded number of threads. Items are handed out to workers
+ * in the order they appear in the list, so the caller only has to make sure that processing of one item
+ * does not depend on the result of another one.</p>
+ *
+ * <p>When thread count is less than two, all the work is done in the calling thread, exactly as
+ * a plain loop would do.</p>
+ */
+public final class ParallelTasks {
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final AtomicLong workerAllocatedBytes = new AtomicLong();
+
+    private ParallelTasks() {
+    }
+
+    public static int availableThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public static <T> void forEach(int threadCount, List<T> items, Consumer<T> action) {
+        forEach(threadCount, items, action, completed -> true);
+    }
+
+    /**
+     * Processes all items, periodically notifying about progress. Progress is always reported from
+     * the calling thread.
+     *
+     * @param progress receives number of items processed so far. When it returns {@code false},
+     * no more items are taken, although items that are currently processed by other threads are completed.
+     */
+    public static <T> void forEach(int threadCount, List<T> items, Consumer<T> action, Progress progress) {
+        if (threadCount < 2 || items.size() < 2) {
+            int completed = 0;
+            for (T item : items) {
+                action.accept(item);
+                if (!progress.reached(++completed)) {
+                    break;
+                }
+            }
+            return;
+        }
+
+        ExecutorService executor = createExecutor(Math.min(threadCount, items.size()) - 1);
+        try {
+            run(executor, threadCount, items, action, progress);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a pool of daemon threads suitable for passing to
+     * {@link #forEach(ExecutorService, int, List, Consumer)}. This is useful when many small batches
+     * of work are processed one after another, so that threads are not created for every batch.
+     */
+    public static ExecutorService createExecutor(int threadCount) {
+        return Executors.newFixedThreadPool(Math.max(1, threadCount), runnable -> {
+            Thread thread = new Thread(runnable, "teavm-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Processes all items using threads of the given executor. The calling thread takes part in
+     * the work as well, so the executor should provide at least {@code threadCount - 1} threads.
+     * The executor is not shut down.
+     */
+    public static <T> void forEach(ExecutorService executor, int threadCount, List<T> items, Consumer<T> action) {
+        if (threadCount < 2 || items.size() < 2) {
+            for (T item : items) {
+                action.accept(item);
+            }
+            return;
+        }
+        run(executor, threadCount, items, action, completed -> true);
+    }
+
+    private static <T> void run(ExecutorService executor, int threadCount, List<T> items, Consumer<T> action,
+            Progress progress) {
+        int workerCount = Math.min(threadCount, items.size());
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicBoolean stopped = new AtomicBoolean();
+        Runnable worker = () -> {
+            while (!stopped.get()) {
+                int index = nextIndex.getAndIncrement();
+                if (index >= items.size()) {
+                    break;
+                }
+                try {
+                    action.accept(items.get(index));
+                } catch (RuntimeException | Error e) {
+                    stopped.set(true);
+                    throw e;
+                }
+                completed.incrementAndGet();
+            }
+        };
+
+        Runnable measuredWorker = () -> {
+            long startAllocatedBytes = currentThreadAllocatedBytes();
+            try {
+                worker.run();
+            } finally {
+                if (startAllocatedBytes >= 0) {
+                    workerAllocatedBytes.addAndGet(currentThreadAllocatedBytes() - startAllocatedBytes);
+                }
+            }
+        };
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < workerCount; ++i) {
+            futures.add(executor.submit(measuredWorker));
+        }
+        Throwable error = null;
+        try {
+            while (!stopped.get()) {
+                int index = nextIndex.getAndIncrement();
+                if (index >= items.size()) {
+                    break;
+                }
+                action.accept(items.get(index));
+                if (!progress.reached(completed.incrementAndGet())) {
+                    stopped.set(true);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            stopped.set(true);
+            error = e;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        rethrow(error);
+        if (!stopped.get()) {
+            progress.reached(completed.get());
+        }
+    }
+
+    private static void rethrow(Throwable error) {
+        if (error == null) {
+            return;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new IllegalStateException(error);
+    }
+
+    /**
+     * @return number of bytes allocated by the current thread, or -1 if JVM does not support
+     * allocation measurement.
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <p>Returns number of bytes allocated so far by worker threads while processing items, including
+     * threads that have already finished. Work done by calling threads is not included, as it can be measured
+     * by {@link #currentThreadAllocatedBytes()}.</p>
+     *
+     * @return allocated bytes, or -1 if JVM does not support allocation measurement.
+     */
+    public static long getWorkerAllocatedBytes() {
+        return currentThreadAllocatedBytes() >= 0 ? workerAllocatedBytes.get() : -1;
+    }
+
+    @FunctionalInterface
+    public interface Progress {
+        boolean reached(int completed);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+/**
+ * Bitmap that is split into chunks of fixed size, so that sets containing only types with big indexes
+ * don't have to allocate memory for all the preceding types, as {@link java.util.BitSet} does.
+ */
+final class ChunkedTypeSet extends TypeSet {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_WORDS = (1 << CHUNK_BITS) / 64;
+    private long[][] chunks;
+    private int size;
+
+    ChunkedTypeSet() {
+        chunks = new long[1][];
+    }
+
+    private ChunkedTypeSet(long[][] chunks, int size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    @Override
+    boolean contains(int type) {
+        int chunkIndex = type >>> CHUNK_BITS;
+        if (chunkIndex >= chunks.length) {
+            return false;
+        }
+        long[] chunk = chunks[chunkIndex];
+        return chunk != null && (chunk[wordIndex(type)] & bit(type)) != 0;
+    }
+
+    @Override
+    TypeSet add(int type) {
+        set(type);
+        return this;
+    }
+
+    void set(int type) {
+        int chunkIndex = type >>> CHUNK_BITS;
+        if (chunkIndex >= chunks.length) {
+            long[][] newChunks = new long[Math.max(chunkIndex + 1, chunks.length * 2)][];
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            chunks = newChunks;
+        }
+        long[] chunk = chunks[chunkIndex];
+        if (chunk == null) {
+            chunk = new long[CHUNK_WORDS];
+            chunks[chunkIndex] = chunk;
+        }
+        int wordIndex = wordIndex(type);
+        long bit = bit(type);
+        if ((chunk[wordIndex] & bit) == 0) {
+            chunk[wordIndex] |= bit;
+            ++size;
+        }
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    TypeSet copy() {
+        long[][] chunksCopy = new long[chunks.length][];
+        for (int i = 0; i < chunks.length; ++i) {
+            if (chunks[i] != null) {
+                chunksCopy[i] = chunks[i].clone();
+            }
+        }
+        return new ChunkedTypeSet(chunksCopy, size);
+    }
+
+    /**
+     * Removes trailing empty space from the chunk table.
+     */
+    void trim() {
+        int length = chunks.length;
+        while (length > 1 && chunks[length - 1] == null) {
+            --length;
+        }
+        if (length < chunks.length) {
+            long[][] newChunks = new long[length][];
+            System.arraycopy(chunks, 0, newChunks, 0, length);
+            chunks = newChunks;
+        }
+    }
+
+    @Override
+    int[] toArray() {
+        int[] result = new int[size];
+        int j = 0;
+        for (int i = 0; i < chunks.length; ++i) {
+            long[] chunk = chunks[i];
+            if (chunk == null) {
+                continue;
+            }
+            for (int k = 0; k < chunk.length; ++k) {
+                long word = chunk[k];
+                while (word != 0) {
+                    int bitIndex = Long.numberOfTrailingZeros(word);
+                    result[j++] = (i << CHUNK_BITS) | (k << 6) | bitIndex;
+                    word &= word - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int wordIndex(int type) {
+        return (type >>> 6) & (CHUNK_WORDS - 1);
+    }
+
+    private static long bit(int type) {
+        return 1L << (type & 63);
+    }
+}
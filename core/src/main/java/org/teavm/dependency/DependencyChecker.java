@@ -17,19 +17,26 @@ package org.teavm.dependency;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import org.objectweb.asm.tree.ClassNode;
 import org.teavm.callgraph.CallGraph;
 import org.teavm.callgraph.DefaultCallGraph;
 import org.teavm.callgraph.DefaultCallGraphNode;
 import org.teavm.common.CachedMapper;
+import org.teavm.common.GraphBuilder;
+import org.teavm.common.GraphUtils;
+import org.teavm.common.IntegerArray;
 import org.teavm.common.Mapper;
+import org.teavm.common.ParallelTasks;
 import org.teavm.common.ServiceRepository;
 import org.teavm.diagnostics.Diagnostics;
 import org.teavm.model.AnnotationReader;
@@ -56,6 +63,8 @@ import org.teavm.model.util.ProgramUtils;
 import org.teavm.parsing.Parser;
 
 public class DependencyChecker implements DependencyInfo {
+    private static final int MIN_CONCURRENT_TRANSITIONS = 256;
+    private static final int MIN_CYCLE_COLLAPSE_CONNECTIONS = 1000;
     static final boolean shouldLog = System.getProperty("org.teavm.logDependencies", "false").equals("true");
     private int classNameSuffix;
     private DependencyClassSource classSource;
@@ -68,10 +77,16 @@ public class DependencyChecker implements DependencyInfo {
     private List<DependencyListener> listeners = new ArrayList<>();
     private ServiceRepository services;
     private Queue<Runnable> tasks = new ArrayDeque<>();
+    private List<TransitionTask> pendingTransitions = new ArrayList<>();
+    private int threadCount = 1;
+    private int unfilteredConnections;
+    private int nextCycleCollapse = MIN_CYCLE_COLLAPSE_CONNECTIONS;
     List<DependencyType> types = new ArrayList<>();
     private Map<String, DependencyType> typeMap = new HashMap<>();
     private DependencyCheckerInterruptor interruptor;
     private boolean interrupted;
+    private long executedTaskCount;
+    private int propagationRoundCount;
     private Diagnostics diagnostics;
     DefaultCallGraph callGraph = new DefaultCallGraph();
     private DependencyAgent agent;
@@ -119,11 +134,44 @@ public class DependencyChecker implements DependencyInfo {
         this.interruptor = interruptor;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * <p>Sets number of threads used to propagate types along connections between nodes. By default
+     * everything is done in the calling thread.</p>
+     *
+     * <p>When more than one thread is used, node-to-node propagation is performed in rounds, and
+     * nodes that received new types during a round pass them further in order of node creation,
+     * so that the result of analysis does not depend on the number of threads.
+     * Consumers other than node-to-node connections are always called from the calling thread.</p>
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public int getTypeCount() {
+        return types.size();
+    }
+
+    public long getExecutedTaskCount() {
+        return executedTaskCount;
+    }
+
+    public int getPropagationRoundCount() {
+        return propagationRoundCount;
+    }
+
     public boolean wasInterrupted() {
         return interrupted;
     }
 
-    public DependencyType getType(String name) {
+    public synchronized DependencyType getType(String name) {
         DependencyType type = typeMap.get(name);
         if (type == null) {
             type = new DependencyType(this, name, types.size());
@@ -135,10 +183,15 @@ public class DependencyChecker implements DependencyInfo {
 
     public DependencyNode createNode() {
         DependencyNode node = new DependencyNode(this);
-        nodes.add(node);
+        registerNode(node);
         return node;
     }
 
+    void registerNode(DependencyNode node) {
+        node.index = nodes.size();
+        nodes.add(node);
+    }
+
     @Override
     public ClassReaderSource getClassSource() {
         return classSource;
@@ -235,11 +288,16 @@ public class DependencyChecker implements DependencyInfo {
         }
     }
 
-    void schedulePropagation(DependencyConsumer consumer, DependencyType type) {
-        tasks.add(() -> consumer.consume(type));
-    }
-
     void schedulePropagation(DependencyConsumer consumer, DependencyType[] types) {
+        if (consumer instanceof DependencyNodeToNodeTransition) {
+            DependencyNodeToNodeTransition transition = (DependencyNodeToNodeTransition) consumer;
+            if (threadCount > 1) {
+                pendingTransitions.add(new TransitionTask(transition, types));
+            } else {
+                tasks.add(() -> transition.consume(types));
+            }
+            return;
+        }
         tasks.add(() -> {
             for (DependencyType type : types) {
                 consumer.consume(type);
@@ -247,6 +305,10 @@ public class DependencyChecker implements DependencyInfo {
         });
     }
 
+    void schedulePendingTypes(DependencyNode node) {
+        tasks.add(node::flushPendingTypes);
+    }
+
     private Set<String> classesAddedByRoot = new HashSet<>();
 
     public ClassDependency linkClass(String className, CallLocation callLocation) {
@@ -485,7 +547,7 @@ public class DependencyChecker implements DependencyInfo {
     }
 
     @Override
-    public MethodDependency getMethodImplementation(MethodReference methodRef) {
+    public synchronized MethodDependency getMethodImplementation(MethodReference methodRef) {
         MethodReader method = methodReaderCache.map(methodRef);
         return method != null ? methodCache.getKnown(method.getReference()) : null;
     }
@@ -494,15 +556,159 @@ public class DependencyChecker implements DependencyInfo {
         if (interrupted) {
             return;
         }
-        int index = 0;
-        while (!tasks.isEmpty()) {
-            tasks.poll().run();
-            if (++index == 100) {
-                if (interruptor != null && !interruptor.shouldContinue()) {
-                    interrupted = true;
-                    break;
+        ExecutorService executor = null;
+        try {
+            int index = 0;
+            while (!tasks.isEmpty() || !pendingTransitions.isEmpty()) {
+                if (!tasks.isEmpty()) {
+                    tasks.poll().run();
+                    executedTaskCount++;
+                } else {
+                    if (executor == null && pendingTransitions.size() >= MIN_CONCURRENT_TRANSITIONS) {
+                        executor = ParallelTasks.createExecutor(threadCount - 1);
+                    }
+                    propagateTransitions(executor);
+                    propagationRoundCount++;
+                }
+                if (unfilteredConnections >= nextCycleCollapse) {
+                    collapseCycles();
                 }
-                index = 0;
+                if (++index == 100) {
+                    if (interruptor != null && !interruptor.shouldContinue()) {
+                        interrupted = true;
+                        break;
+                    }
+                    index = 0;
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Sets number of connections without filters that triggers the first search for cycles.
+     */
+    void setMinCycleCollapseConnections(int connections) {
+        nextCycleCollapse = connections;
+    }
+
+    void unfilteredConnectionAdded() {
+        unfilteredConnections++;
+    }
+
+    /**
+     * Finds cycles of nodes connected without filters and merges every cycle into a single node. Types added
+     * to any node of a cycle eventually reach all other nodes, so there is no reason to pass them around
+     * one connection at a time. Runs each time the number of connections doubles.
+     */
+    private void collapseCycles() {
+        nextCycleCollapse = unfilteredConnections * 2;
+
+        GraphBuilder builder = new GraphBuilder(nodes.size());
+        IntegerArray start = new IntegerArray(16);
+        for (DependencyNode node : nodes) {
+            if (node.representative() != node || node.degree > 2) {
+                continue;
+            }
+            boolean hasEdges = false;
+            for (DependencyNodeToNodeTransition transition : node.getUnfilteredTransitions()) {
+                DependencyNode target = transition.destination.representative();
+                if (target != node && target.degree <= 2) {
+                    builder.addEdge(node.index, target.index);
+                    hasEdges = true;
+                }
+            }
+            if (hasEdges) {
+                start.add(node.index);
+            }
+        }
+        if (start.size() == 0) {
+            return;
+        }
+
+        for (int[] component : GraphUtils.findStronglyConnectedComponents(builder.build(), start.getAll())) {
+            if (component.length < 2) {
+                continue;
+            }
+            Arrays.sort(component);
+            List<DependencyNode> componentNodes = new ArrayList<>(component.length);
+            for (int index : component) {
+                componentNodes.add(nodes.get(index));
+            }
+            componentNodes.get(0).merge(componentNodes);
+        }
+    }
+
+    private void propagateTransitions(ExecutorService executor) {
+        List<TransitionTask> round = pendingTransitions;
+        pendingTransitions = new ArrayList<>();
+
+        int roundThreads = round.size() >= MIN_CONCURRENT_TRANSITIONS ? threadCount : 1;
+        ParallelTasks.forEach(executor, roundThreads, round, TransitionTask::run);
+
+        List<DependencyNode> nodesToFlush = new ArrayList<>();
+        for (TransitionTask task : round) {
+            DependencyNodeToNodeTransition transition = task.transition;
+            if (task.deferredTypes != null) {
+                DependencyType[] deferredTypes = task.deferredTypes;
+                tasks.add(() -> transition.consume(deferredTypes));
+            }
+            if (task.flushDestination) {
+                nodesToFlush.add(transition.destination.representative());
+            }
+        }
+        nodesToFlush.sort(Comparator.comparingInt(node -> node.index));
+        for (DependencyNode node : nodesToFlush) {
+            schedulePendingTypes(node);
+        }
+    }
+
+    static final class TransitionTask {
+        final DependencyNodeToNodeTransition transition;
+        final DependencyType[] types;
+        DependencyType[] deferredTypes;
+        boolean flushDestination;
+
+        TransitionTask(DependencyNodeToNodeTransition transition, DependencyType[] types) {
+            this.transition = transition;
+            this.types = types;
+        }
+
+        void run() {
+            DependencyNode destination = transition.destination.representative();
+            DependencyTypeFilter filter = transition.filter;
+            List<DependencyType> deferred = null;
+            for (DependencyType type : types) {
+                if (filter != null && !filter.match(type)) {
+                    continue;
+                }
+                if (DependencyNodeToNodeTransition.changesGraph(type)) {
+                    // Connecting array items or class values changes the graph, so can't be done concurrently
+                    if (deferred == null) {
+                        deferred = new ArrayList<>();
+                    }
+                    deferred.add(type);
+                    continue;
+                }
+                if (transition.destination.degree > 2) {
+                    continue;
+                }
+                synchronized (destination) {
+                    if (destination.addType(type)) {
+                        if (shouldLog) {
+                            System.out.println(transition.destination.getTag() + " -> " + type.getName());
+                        }
+                        if (destination.addPendingType(type)) {
+                            flushDestination = true;
+                        }
+                    }
+                }
+            }
+            if (deferred != null) {
+                deferredTypes = deferred.toArray(new DependencyType[deferred.size()]);
             }
         }
     }
@@ -513,12 +719,20 @@ public class DependencyChecker implements DependencyInfo {
         if (!interrupted) {
             completing = true;
             lock();
+            shareTypeSets();
             for (DependencyListener listener : listeners) {
                 listener.completing(agent);
             }
         }
     }
 
+    private void shareTypeSets() {
+        TypeSetPool pool = new TypeSetPool();
+        for (DependencyNode node : nodes) {
+            node.shareTypes(pool);
+        }
+    }
+
     private void lock() {
         for (MethodReference method : getReachableMethods()) {
             lock(getMethod(method), true);
@@ -531,19 +745,19 @@ public class DependencyChecker implements DependencyInfo {
     private void lock(MethodDependency dep, boolean lock) {
         for (DependencyNode node : dep.variableNodes) {
             if (node != null) {
-                node.locked = lock;
+                node.setLocked(lock);
             }
         }
         if (dep.resultNode != null) {
-            dep.resultNode.locked = lock;
+            dep.resultNode.setLocked(lock);
         }
         if (dep.thrown != null) {
-            dep.thrown.locked = lock;
+            dep.thrown.setLocked(lock);
         }
     }
 
     private void lock(FieldDependency dep) {
-        dep.value.locked = true;
+        dep.value.setLocked(true);
     }
 
     public <T> T getService(Class<T> type) {
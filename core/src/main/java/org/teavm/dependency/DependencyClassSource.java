@@ -43,11 +43,11 @@ class DependencyClassSource implements ClassHolderSource {
     }
 
     @Override
-    public ClassHolder get(String name) {
+    public synchronized ClassHolder get(String name) {
         return cache.computeIfAbsent(name, this::findAndTransformClass);
     }
 
-    public void submit(ClassHolder cls) {
+    public synchronized void submit(ClassHolder cls) {
         if (innerSource.get(cls.getName()) != null || generatedClasses.containsKey(cls.getName())) {
             throw new IllegalArgumentException("Class " + cls.getName() + " is already defined");
         }
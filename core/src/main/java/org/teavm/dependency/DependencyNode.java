@@ -17,21 +17,29 @@ package org.teavm.dependency;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import org.teavm.model.MethodReference;
 
 public class DependencyNode implements ValueDependencyInfo {
     private DependencyChecker dependencyChecker;
-    private List<DependencyConsumer> followers;
-    private int[] smallTypes;
-    private BitSet types;
+    List<DependencyConsumer> followers;
+    private TypeSet types;
+    private TypeSet pendingTypes;
     private List<DependencyNodeToNodeTransition> transitions;
+    private DependencyNode representative;
+    private List<DependencyNode> mergedNodes;
+    private List<DependencyNodeToNodeTransition> internalTransitions;
+    private int lockedCount;
     private volatile String tag;
     private DependencyNode arrayItemNode;
     private DependencyNode classValueNode;
-    private int degree;
-    boolean locked;
+    int degree;
+    int index;
+    private boolean locked;
     MethodReference method;
 
     DependencyNode(DependencyChecker dependencyChecker) {
@@ -43,47 +51,48 @@ public class DependencyNode implements ValueDependencyInfo {
         this.degree = degree;
     }
 
-    private boolean addType(DependencyType type) {
+    boolean addType(DependencyType type) {
         if (types == null) {
-            if (smallTypes == null) {
-                if (locked) {
-                    throw new IllegalStateException("Error propagating type " + type.getName()
-                            + " to node in " + method);
-                }
-                smallTypes = new int[] { type.index };
-                return true;
-            }
+            checkNotLocked(type);
+            types = type.singletonSet;
+            return true;
         }
-        if (smallTypes != null) {
-            for (int i = 0; i < smallTypes.length; ++i) {
-                if (smallTypes[i] == type.index) {
-                    return false;
-                }
-            }
-            if (smallTypes.length == 5) {
-                types = new BitSet();
-                for (int existingType : smallTypes) {
-                    types.set(existingType);
-                }
-                smallTypes = null;
-            } else {
-                if (locked) {
-                    throw new IllegalStateException("Error propagating type " + type.getName() + " to node in method "
-                            + method);
-                }
-                smallTypes = Arrays.copyOf(smallTypes, smallTypes.length + 1);
-                smallTypes[smallTypes.length - 1] = type.index;
-                return true;
-            }
+        if (types.contains(type.index)) {
+            return false;
         }
-        if (!types.get(type.index)) {
-            if (locked) {
-                throw new IllegalStateException("Error propagating type " + type.getName() + " to node " + tag);
-            }
-            types.set(type.index);
-            return true;
+        checkNotLocked(type);
+        if (types.shared) {
+            types = types.copy();
+        }
+        types = types.add(type.index);
+        return true;
+    }
+
+    /**
+     * Returns the node that holds types and followers of this node. Nodes that form a cycle of connections
+     * without filters always have the same types, so such nodes are merged into a single representative,
+     * see {@link #merge(List)}.
+     */
+    DependencyNode representative() {
+        return representative != null ? representative : this;
+    }
+
+    void setLocked(boolean locked) {
+        if (this.locked != locked) {
+            this.locked = locked;
+            representative().lockedCount += locked ? 1 : -1;
+        }
+    }
+
+    void shareTypes(TypeSetPool pool) {
+        types = pool.intern(types);
+    }
+
+    private void checkNotLocked(DependencyType type) {
+        if (lockedCount > 0) {
+            throw new IllegalStateException("Error propagating type " + type.getName() + " to node in method "
+                    + method);
         }
-        return false;
     }
 
     public void propagate(DependencyType type) {
@@ -93,47 +102,86 @@ public class DependencyNode implements ValueDependencyInfo {
         if (degree > 2) {
             return;
         }
-        if (addType(type)) {
+        DependencyNode target = representative();
+        if (target.addType(type)) {
             if (DependencyChecker.shouldLog) {
                 System.out.println(tag + " -> " + type.getName());
             }
-            if (followers != null) {
-                for (DependencyConsumer consumer : followers.toArray(new DependencyConsumer[followers.size()])) {
-                    dependencyChecker.schedulePropagation(consumer, type);
-                }
+            if (target.addPendingType(type)) {
+                dependencyChecker.schedulePendingTypes(target);
             }
         }
     }
 
     public void propagate(DependencyType[] newTypes) {
-        DependencyType[] types = new DependencyType[newTypes.length];
-        int j = 0;
+        DependencyNode target = representative();
+        boolean schedule = false;
         for (int i = 0; i < newTypes.length; ++i) {
             DependencyType type = newTypes[i];
             if (type.getDependencyChecker() != dependencyChecker) {
                 throw new IllegalArgumentException("The given type does not belong to the same dependency checker");
             }
-            if (addType(type)) {
-                types[j++] = type;
+            if (target.addType(type)) {
+                if (DependencyChecker.shouldLog) {
+                    System.out.println(tag + " -> " + type.getName());
+                }
+                schedule |= target.addPendingType(type);
             }
         }
-        if (j == 0) {
+        if (schedule) {
+            dependencyChecker.schedulePendingTypes(target);
+        }
+    }
+
+    /**
+     * Remembers a type that was just added to the node, so that it is passed to followers
+     * together with other types added before the next call to {@link #flushPendingTypes()}.
+     *
+     * @return {@code true} if this is the first pending type, so the node has to be scheduled for flushing.
+     */
+    boolean addPendingType(DependencyType type) {
+        if (followers == null && internalTransitions == null) {
+            return false;
+        }
+        if (pendingTypes == null) {
+            pendingTypes = type.singletonSet;
+            return true;
+        }
+        pendingTypes = pendingTypes.add(type.index);
+        return false;
+    }
+
+    void flushPendingTypes() {
+        if (pendingTypes == null) {
             return;
         }
-        if (DependencyChecker.shouldLog) {
-            for (int i = 0; i < j; ++i) {
-                System.out.println(tag + " -> " + types[i].getName());
-            }
+        DependencyType[] types = getDependencyTypes(pendingTypes.toArray());
+        pendingTypes = null;
+        if (internalTransitions != null) {
+            connectInternalItems(types);
         }
         if (followers != null) {
-            types = Arrays.copyOf(types, j);
-            for (DependencyConsumer consumer : followers.toArray(new DependencyConsumer[followers.size()])) {
-                dependencyChecker.schedulePropagation(consumer, types);
+            for (int i = 0; i < followers.size(); ++i) {
+                dependencyChecker.schedulePropagation(followers.get(i), types);
+            }
+        }
+    }
+
+    private void connectInternalItems(DependencyType[] types) {
+        for (DependencyType type : types) {
+            if (DependencyNodeToNodeTransition.changesGraph(type)) {
+                for (int i = 0; i < internalTransitions.size(); ++i) {
+                    internalTransitions.get(i).connectItems(type);
+                }
             }
         }
     }
 
     public void addConsumer(DependencyConsumer consumer) {
+        if (representative != null) {
+            representative.addConsumer(consumer);
+            return;
+        }
         if (followers == null) {
             followers = new ArrayList<>();
         }
@@ -141,19 +189,33 @@ public class DependencyNode implements ValueDependencyInfo {
             return;
         }
         followers.add(consumer);
-        if (this.types != null) {
-            List<DependencyType> types = new ArrayList<>();
-            for (int index = this.types.nextSetBit(0); index >= 0; index = this.types.nextSetBit(index + 1)) {
-                types.add(dependencyChecker.types.get(index));
+
+        // Pending types will be passed to the new consumer on flush, so skip them here
+        if (this.types == null) {
+            return;
+        }
+        int[] typeIndexes = this.types.toArray();
+        if (pendingTypes != null) {
+            int j = 0;
+            for (int index : typeIndexes) {
+                if (!pendingTypes.contains(index)) {
+                    typeIndexes[j++] = index;
+                }
             }
-            dependencyChecker.schedulePropagation(consumer, types.toArray(new DependencyType[types.size()]));
-        } else if (this.smallTypes != null) {
-            DependencyType[] types = new DependencyType[smallTypes.length];
-            for (int i = 0; i < types.length; ++i) {
-                types[i] = dependencyChecker.types.get(smallTypes[i]);
+            if (j == 0) {
+                return;
             }
-            dependencyChecker.schedulePropagation(consumer, types);
+            typeIndexes = Arrays.copyOf(typeIndexes, j);
         }
+        dependencyChecker.schedulePropagation(consumer, getDependencyTypes(typeIndexes));
+    }
+
+    private DependencyType[] getDependencyTypes(int[] typeIndexes) {
+        DependencyType[] result = new DependencyType[typeIndexes.length];
+        for (int i = 0; i < typeIndexes.length; ++i) {
+            result[i] = dependencyChecker.types.get(typeIndexes[i]);
+        }
+        return result;
     }
 
     public void connect(DependencyNode node, DependencyTypeFilter filter) {
@@ -179,52 +241,191 @@ public class DependencyNode implements ValueDependencyInfo {
         if (DependencyChecker.shouldLog) {
             System.out.println("Connecting " + tag + " to " + node.tag);
         }
+        if (filter == null) {
+            DependencyNode target = representative();
+            if (target == node.representative()) {
+                target.addInternalTransition(transition);
+                return;
+            }
+            dependencyChecker.unfilteredConnectionAdded();
+        }
         addConsumer(transition);
     }
 
+    private void addInternalTransition(DependencyNodeToNodeTransition transition) {
+        if (internalTransitions == null) {
+            internalTransitions = new ArrayList<>();
+        }
+        internalTransitions.add(transition);
+        if (types != null) {
+            DependencyType[] currentTypes = getDependencyTypes(types.toArray());
+            for (DependencyType type : currentTypes) {
+                if (DependencyNodeToNodeTransition.changesGraph(type)) {
+                    transition.connectItems(type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges representatives of a cycle into this node, which must be the representative as well. Consumers
+     * of every merged node receive types of the whole cycle they haven't received yet, connections inside
+     * the cycle are no longer used to pass types.
+     */
+    void merge(List<DependencyNode> nodes) {
+        Set<DependencyNode> nodeSet = new HashSet<>(nodes);
+        for (DependencyNode node : nodes) {
+            node.flushPendingTypes();
+        }
+
+        TypeSet mergedTypes = types != null ? types.copy() : null;
+        for (DependencyNode node : nodes) {
+            if (node == this || node.types == null) {
+                continue;
+            }
+            for (int type : node.types.toArray()) {
+                if (mergedTypes == null) {
+                    mergedTypes = dependencyChecker.types.get(type).singletonSet;
+                } else if (!mergedTypes.contains(type)) {
+                    if (mergedTypes.shared) {
+                        mergedTypes = mergedTypes.copy();
+                    }
+                    mergedTypes = mergedTypes.add(type);
+                }
+            }
+        }
+
+        List<DependencyConsumer> mergedFollowers = new ArrayList<>();
+        Set<DependencyConsumer> mergedFollowerSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<DependencyNodeToNodeTransition> mergedInternalTransitions = new ArrayList<>();
+        for (DependencyNode node : nodes) {
+            if (node.internalTransitions != null) {
+                mergedInternalTransitions.addAll(node.internalTransitions);
+            }
+            if (node.followers == null) {
+                continue;
+            }
+            for (DependencyConsumer consumer : node.followers) {
+                if (consumer instanceof DependencyNodeToNodeTransition) {
+                    DependencyNodeToNodeTransition transition = (DependencyNodeToNodeTransition) consumer;
+                    if (transition.filter == null && nodeSet.contains(transition.destination.representative())) {
+                        mergedInternalTransitions.add(transition);
+                        continue;
+                    }
+                }
+                if (mergedFollowerSet.add(consumer)) {
+                    mergedFollowers.add(consumer);
+                }
+                int[] missingTypes = missingTypes(mergedTypes, node.types);
+                if (missingTypes.length > 0) {
+                    dependencyChecker.schedulePropagation(consumer, getDependencyTypes(missingTypes));
+                }
+            }
+        }
+
+        if (mergedNodes == null) {
+            mergedNodes = new ArrayList<>();
+        }
+        for (DependencyNode node : nodes) {
+            if (node == this) {
+                continue;
+            }
+            lockedCount += node.lockedCount;
+            mergedNodes.add(node);
+            node.representative = this;
+            if (node.mergedNodes != null) {
+                for (DependencyNode mergedNode : node.mergedNodes) {
+                    mergedNode.representative = this;
+                }
+                mergedNodes.addAll(node.mergedNodes);
+            }
+            node.types = null;
+            node.followers = null;
+            node.internalTransitions = null;
+            node.mergedNodes = null;
+            node.lockedCount = 0;
+        }
+
+        types = mergedTypes;
+        followers = mergedFollowers.isEmpty() ? null : mergedFollowers;
+        internalTransitions = mergedInternalTransitions;
+        if (types != null) {
+            connectInternalItems(getDependencyTypes(types.toArray()));
+        }
+    }
+
+    private static int[] missingTypes(TypeSet allTypes, TypeSet existingTypes) {
+        if (allTypes == null) {
+            return new int[0];
+        }
+        int[] result = allTypes.toArray();
+        if (existingTypes == null) {
+            return result;
+        }
+        int j = 0;
+        for (int type : result) {
+            if (!existingTypes.contains(type)) {
+                result[j++] = type;
+            }
+        }
+        return Arrays.copyOf(result, j);
+    }
+
+    List<DependencyNodeToNodeTransition> getUnfilteredTransitions() {
+        List<DependencyNodeToNodeTransition> result = new ArrayList<>();
+        if (followers != null) {
+            for (DependencyConsumer consumer : followers) {
+                if (consumer instanceof DependencyNodeToNodeTransition) {
+                    DependencyNodeToNodeTransition transition = (DependencyNodeToNodeTransition) consumer;
+                    if (transition.filter == null) {
+                        result.add(transition);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
     public void connect(DependencyNode node) {
         connect(node, null);
     }
 
     @Override
     public DependencyNode getArrayItem() {
-        if (arrayItemNode == null) {
-            arrayItemNode = new DependencyNode(dependencyChecker, degree + 1);
-            dependencyChecker.nodes.add(arrayItemNode);
-            if (DependencyChecker.shouldLog) {
-                arrayItemNode.tag = tag + "[";
+        synchronized (dependencyChecker) {
+            if (arrayItemNode == null) {
+                arrayItemNode = new DependencyNode(dependencyChecker, degree + 1);
+                dependencyChecker.registerNode(arrayItemNode);
+                if (DependencyChecker.shouldLog) {
+                    arrayItemNode.tag = tag + "[";
+                }
             }
+            return arrayItemNode;
         }
-        return arrayItemNode;
     }
 
     @Override
     public DependencyNode getClassValueNode() {
-        if (classValueNode == null) {
-            classValueNode = new DependencyNode(dependencyChecker, degree);
-            dependencyChecker.nodes.add(classValueNode);
-            if (DependencyChecker.shouldLog) {
-                classValueNode.tag = tag + "@";
+        synchronized (dependencyChecker) {
+            if (classValueNode == null) {
+                classValueNode = new DependencyNode(dependencyChecker, degree);
+                dependencyChecker.registerNode(classValueNode);
+                if (DependencyChecker.shouldLog) {
+                    classValueNode.tag = tag + "@";
+                }
             }
+            return classValueNode;
         }
-        return classValueNode;
     }
 
     @Override
     public boolean hasArrayType() {
-        return arrayItemNode != null && (arrayItemNode.types != null || arrayItemNode.smallTypes != null);
+        return arrayItemNode != null && arrayItemNode.representative().types != null;
     }
 
     public boolean hasType(DependencyType type) {
-        if (smallTypes != null) {
-            for (int i = 0; i < smallTypes.length; ++i) {
-                if (smallTypes[i] == type.index) {
-                    return true;
-                }
-            }
-            return false;
-        }
-        return types != null && type.getDependencyChecker() == dependencyChecker && types.get(type.index);
+        TypeSet types = representative().types;
+        return types != null && type.getDependencyChecker() == dependencyChecker && types.contains(type.index);
     }
 
     @Override
@@ -234,21 +435,16 @@ public class DependencyNode implements ValueDependencyInfo {
 
     @Override
     public String[] getTypes() {
-        if (smallTypes != null) {
-            String[] result = new String[smallTypes.length];
-            for (int i = 0; i < result.length; ++i) {
-                result[i] = dependencyChecker.types.get(smallTypes[i]).getName();
-            }
-            return result;
-        }
+        TypeSet types = representative().types;
         if (types == null) {
             return new String[0];
         }
-        List<String> result = new ArrayList<>();
-        for (int index = types.nextSetBit(0); index >= 0; index = types.nextSetBit(index + 1)) {
-            result.add(dependencyChecker.types.get(index).getName());
+        int[] typeIndexes = types.toArray();
+        String[] result = new String[typeIndexes.length];
+        for (int i = 0; i < typeIndexes.length; ++i) {
+            result[i] = dependencyChecker.types.get(typeIndexes[i]).getName();
         }
-        return result.toArray(new String[result.size()]);
+        return result;
     }
 
     public String getTag() {
@@ -15,10 +15,12 @@
  */
 package org.teavm.dependency;
 
+import java.util.Arrays;
+
 class DependencyNodeToNodeTransition implements DependencyConsumer {
-    private DependencyNode source;
+    DependencyNode source;
     DependencyNode destination;
-    private DependencyTypeFilter filter;
+    DependencyTypeFilter filter;
 
     public DependencyNodeToNodeTransition(DependencyNode source, DependencyNode destination,
             DependencyTypeFilter filter) {
@@ -32,6 +34,34 @@ class DependencyNodeToNodeTransition implements DependencyConsumer {
         if (filter != null && !filter.match(type)) {
             return;
         }
+        connectItems(type);
+        if (!destination.hasType(type)) {
+            destination.propagate(type);
+        }
+    }
+
+    void consume(DependencyType[] types) {
+        DependencyType[] passedTypes = new DependencyType[types.length];
+        int j = 0;
+        for (DependencyType type : types) {
+            if (filter != null && !filter.match(type)) {
+                continue;
+            }
+            connectItems(type);
+            if (!destination.hasType(type)) {
+                passedTypes[j++] = type;
+            }
+        }
+        if (j > 0 && destination.degree <= 2) {
+            destination.propagate(j == types.length ? passedTypes : Arrays.copyOf(passedTypes, j));
+        }
+    }
+
+    static boolean changesGraph(DependencyType type) {
+        return type.getName().startsWith("[") || type.getName().equals("java.lang.Class");
+    }
+
+    void connectItems(DependencyType type) {
         if (type.getName().startsWith("[")) {
             source.getArrayItem().connect(destination.getArrayItem());
             destination.getArrayItem().connect(source.getArrayItem());
@@ -39,8 +69,5 @@ class DependencyNodeToNodeTransition implements DependencyConsumer {
         if (type.getName().equals("java.lang.Class")) {
             source.getClassValueNode().connect(destination.getClassValueNode());
         }
-        if (!destination.hasType(type)) {
-            destination.propagate(type);
-        }
     }
 }
@@ -23,11 +23,13 @@ public class DependencyType {
     private DependencyChecker dependencyChecker;
     private String name;
     int index;
+    final TypeSet singletonSet;
 
     public DependencyType(DependencyChecker dependencyChecker, String name, int index) {
         this.dependencyChecker = dependencyChecker;
         this.name = name;
         this.index = index;
+        singletonSet = new SingletonTypeSet(index);
     }
 
     DependencyChecker getDependencyChecker() {
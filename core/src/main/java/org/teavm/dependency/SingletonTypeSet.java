@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+/**
+ * Set of exactly one type. Instances are shared between all nodes that contain only this type,
+ * see {@link DependencyType#singletonSet}.
+ */
+final class SingletonTypeSet extends TypeSet {
+    private final int type;
+
+    SingletonTypeSet(int type) {
+        this.type = type;
+        shared = true;
+    }
+
+    @Override
+    boolean contains(int type) {
+        return this.type == type;
+    }
+
+    @Override
+    TypeSet add(int type) {
+        return type < this.type
+                ? new SortedArrayTypeSet(type, this.type)
+                : new SortedArrayTypeSet(this.type, type);
+    }
+
+    @Override
+    int size() {
+        return 1;
+    }
+
+    @Override
+    TypeSet copy() {
+        return this;
+    }
+
+    @Override
+    int[] toArray() {
+        return new int[] { type };
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import java.util.Arrays;
+
+final class SortedArrayTypeSet extends TypeSet {
+    static final int MAX_SIZE = 32;
+    private int[] data;
+    private int size;
+
+    SortedArrayTypeSet(int first, int second) {
+        data = new int[] { first, second, 0, 0 };
+        size = 2;
+    }
+
+    SortedArrayTypeSet(int[] data) {
+        this(data, data.length);
+    }
+
+    private SortedArrayTypeSet(int[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+
+    @Override
+    boolean contains(int type) {
+        return Arrays.binarySearch(data, 0, size, type) >= 0;
+    }
+
+    @Override
+    TypeSet add(int type) {
+        if (size == MAX_SIZE) {
+            ChunkedTypeSet result = new ChunkedTypeSet();
+            for (int i = 0; i < size; ++i) {
+                result.set(data[i]);
+            }
+            result.set(type);
+            return result;
+        }
+        int index = -Arrays.binarySearch(data, 0, size, type) - 1;
+        if (size == data.length) {
+            data = Arrays.copyOf(data, Math.min(MAX_SIZE, size * 2));
+        }
+        System.arraycopy(data, index, data, index + 1, size - index);
+        data[index] = type;
+        ++size;
+        return this;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    TypeSet copy() {
+        return new SortedArrayTypeSet(Arrays.copyOf(data, Math.min(MAX_SIZE, size * 2)), size);
+    }
+
+    @Override
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
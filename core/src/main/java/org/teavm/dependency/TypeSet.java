@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+/**
+ * <p>Set of type indexes stored in a {@link DependencyNode}. Most of nodes hold just a few types, so
+ * representation is chosen depending on size: a shared immutable set of a single type, a sorted array
+ * for small sets and a chunked bitmap for large ones.</p>
+ *
+ * <p>Sets are not modified directly. Instead, {@link #add(int)} returns a set that contains the new type,
+ * which is either the same set modified in place or a new set of a more suitable representation. Shared
+ * sets (see {@link TypeSetPool}) are never modified in place, {@link #copy()} should be called first.</p>
+ */
+abstract class TypeSet {
+    boolean shared;
+
+    abstract boolean contains(int type);
+
+    /**
+     * Adds a type that is not contained in this set yet.
+     */
+    abstract TypeSet add(int type);
+
+    abstract int size();
+
+    /**
+     * Creates a set with the same types that can be modified in place.
+     */
+    abstract TypeSet copy();
+
+    /**
+     * Returns all types of this set in ascending order.
+     */
+    abstract int[] toArray();
+}
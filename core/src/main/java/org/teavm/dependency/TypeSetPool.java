@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces equal type sets with a single shared instance. Used after analysis is complete, when sets are
+ * unlikely to change anymore, but are still kept in memory for the rest of the build.
+ */
+final class TypeSetPool {
+    private Map<Key, TypeSet> sets = new HashMap<>();
+
+    TypeSet intern(TypeSet set) {
+        if (set == null || set.shared) {
+            return set;
+        }
+        int[] types = set.toArray();
+        return sets.computeIfAbsent(new Key(types), key -> {
+            TypeSet result;
+            if (types.length <= SortedArrayTypeSet.MAX_SIZE) {
+                result = new SortedArrayTypeSet(types);
+            } else {
+                ChunkedTypeSet chunkedSet = (ChunkedTypeSet) set;
+                chunkedSet.trim();
+                result = chunkedSet;
+            }
+            result.shared = true;
+            return result;
+        });
+    }
+
+    private static final class Key {
+        private final int[] types;
+        private final int hash;
+
+        Key(int[] types) {
+            this.types = types;
+            hash = Arrays.hashCode(types);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(types, ((Key) obj).types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -27,13 +27,13 @@ public class InMemoryProgramCache implements ProgramCache {
     private final Map<MethodReference, Program> cache = new HashMap<>();
 
     @Override
-    public Program get(MethodReference method) {
+    public synchronized Program get(MethodReference method) {
         Program program = cache.get(method);
         return program != null ? ProgramUtils.copy(program) : null;
     }
 
     @Override
-    public void store(MethodReference method, Program program) {
+    public synchronized void store(MethodReference method, Program program) {
         cache.put(method, ProgramUtils.copy(program));
     }
 }
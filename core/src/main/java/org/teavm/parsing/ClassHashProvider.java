@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.parsing;
+
+/**
+ * <p>Provides digests of class file contents. Unlike {@link ClassDateProvider}, a digest does not change
+ * when a class file is merely rewritten with the same bytes, or when some other class in the same JAR changes.</p>
+ */
+public interface ClassHashProvider {
+    /**
+     * <p>Gets digest of the given class.</p>
+     *
+     * @param className name of the class.
+     * @return hex-encoded digest of class file, or {@code null} if class file is not available.
+     */
+    String getContentHash(String className);
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.parsing;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.teavm.common.Mapper;
+import org.teavm.model.ClassHolder;
+
+/**
+ * <p>Mapper that parses classes speculatively on background threads. When class is parsed, classes referenced
+ * from its constant pool are passed to {@link #prefetch(String)}, so by the time dependency analysis
+ * asks for them, they are likely to be parsed already.</p>
+ *
+ * <p>Number of classes that were parsed but not yet requested is limited. When the limit is reached,
+ * the class that was prefetched earliest is dropped (and its parsing is cancelled if it has not started yet),
+ * so that it's parsed on demand if it's ever requested.</p>
+ */
+class ClassPrefetcher implements Mapper<String, ClassHolder> {
+    private static final int MAX_PREFETCHED_CLASSES = 1024;
+    private final Mapper<String, ClassHolder> innerMapper;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Future<ClassHolder>> prefetched = new LinkedHashMap<>();
+    private final Set<String> requested = new HashSet<>();
+
+    ClassPrefetcher(Mapper<String, ClassHolder> innerMapper) {
+        this.innerMapper = innerMapper;
+        int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "TeaVM class prefetcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    synchronized void prefetch(String className) {
+        if (executor.isShutdown() || !requested.add(className)) {
+            return;
+        }
+        if (prefetched.size() >= MAX_PREFETCHED_CLASSES) {
+            evictEldest();
+        }
+        try {
+            prefetched.put(className, executor.submit(() -> innerMapper.map(className)));
+        } catch (RejectedExecutionException e) {
+            requested.remove(className);
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Future<ClassHolder>>> iterator = prefetched.entrySet().iterator();
+        Map.Entry<String, Future<ClassHolder>> eldest = iterator.next();
+        iterator.remove();
+        eldest.getValue().cancel(false);
+        requested.remove(eldest.getKey());
+    }
+
+    /**
+     * Drops all classes that were prefetched but not requested and stops background threads. Further
+     * calls to {@link #prefetch(String)} are ignored, {@link #map(String)} keeps working and parses
+     * classes on demand.
+     */
+    synchronized void shutdown() {
+        for (Future<ClassHolder> future : prefetched.values()) {
+            future.cancel(false);
+        }
+        prefetched.clear();
+        requested.clear();
+        executor.shutdown();
+    }
+
+    @Override
+    public ClassHolder map(String className) {
+        Future<ClassHolder> future;
+        synchronized (this) {
+            requested.add(className);
+            future = prefetched.remove(className);
+        }
+        if (future == null) {
+            return innerMapper.map(className);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while parsing class " + className, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Error parsing class " + className, cause);
+        }
+    }
+}
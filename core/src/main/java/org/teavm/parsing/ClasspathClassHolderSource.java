@@ -16,27 +16,56 @@
 package org.teavm.parsing;
 
 import java.util.Date;
+import org.teavm.cache.ClassSnapshot;
 import org.teavm.model.ClassHolder;
 import org.teavm.model.ClassHolderSource;
 import org.teavm.parsing.resource.ClasspathResourceReader;
 import org.teavm.parsing.resource.MapperClassHolderSource;
 import org.teavm.parsing.resource.ResourceClassHolderMapper;
 
-public class ClasspathClassHolderSource implements ClassHolderSource, ClassDateProvider {
+public class ClasspathClassHolderSource implements ClassHolderSource, ClassDateProvider, ClassHashProvider {
     private MapperClassHolderSource innerClassSource;
     private ClasspathResourceMapper classPathMapper;
+    private ClassPrefetcher prefetcher;
 
     public ClasspathClassHolderSource(ClassLoader classLoader) {
+        this(classLoader, false);
+    }
+
+    /**
+     * @param prefetch whether to parse classes referenced by requested classes in background threads.
+     * Returned classes are the same, but parsing overlaps with whatever caller does with requested classes.
+     * Ignored when there is only one processor available, since background parsing would only slow down caller.
+     */
+    public ClasspathClassHolderSource(ClassLoader classLoader, boolean prefetch) {
         ClasspathResourceReader reader = new ClasspathResourceReader(classLoader);
         ResourceClassHolderMapper rawMapper = new ResourceClassHolderMapper(reader);
         classPathMapper = new ClasspathResourceMapper(classLoader, rawMapper);
-        innerClassSource = new MapperClassHolderSource(classPathMapper);
+        classPathMapper.setSnapshot(ClassSnapshot.load(classLoader));
+        if (prefetch && Runtime.getRuntime().availableProcessors() > 1) {
+            prefetcher = new ClassPrefetcher(classPathMapper);
+            rawMapper.setReferenceConsumer(name -> prefetcher.prefetch(classPathMapper.renameClass(name)));
+            innerClassSource = new MapperClassHolderSource(prefetcher);
+        } else {
+            innerClassSource = new MapperClassHolderSource(classPathMapper);
+        }
     }
 
     public ClasspathClassHolderSource() {
         this(ClasspathClassHolderSource.class.getClassLoader());
     }
 
+    /**
+     * Stops parsing classes in background threads and drops classes that were parsed but not requested yet.
+     * Should be called when the build that uses this source completes. The source remains usable,
+     * but classes are parsed on demand afterwards.
+     */
+    public void stopPrefetching() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+    }
+
     @Override
     public ClassHolder get(String name) {
         return innerClassSource.get(name);
@@ -46,4 +75,9 @@ public class ClasspathClassHolderSource implements ClassHolderSource, ClassDateP
     public Date getModificationDate(String className) {
         return classPathMapper.getModificationDate(className);
     }
+
+    @Override
+    public String getContentHash(String className) {
+        return classPathMapper.getContentHash(className);
+    }
 }
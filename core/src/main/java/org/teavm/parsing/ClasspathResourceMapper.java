@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
@@ -27,6 +29,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import org.teavm.cache.ClassSnapshot;
 import org.teavm.common.CachedMapper;
 import org.teavm.common.Mapper;
 import org.teavm.model.ClassHolder;
@@ -35,14 +38,17 @@ import org.teavm.model.ClassHolder;
  *
  * @author Alexey Andreev
  */
-public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, ClassDateProvider {
+public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, ClassDateProvider,
+        ClassHashProvider {
     private static final String PACKAGE_PREFIX = "packagePrefix.";
     private static final String CLASS_PREFIX = "classPrefix.";
     private Mapper<String, ClassHolder> innerMapper;
     private List<Transformation> transformations = new ArrayList<>();
-    private ClassRefsRenamer renamer;
+    private ThreadLocal<ClassRefsRenamer> renamer;
     private ClassLoader classLoader;
     private Map<String, ModificationDate> modificationDates = new HashMap<>();
+    private Map<String, ContentHash> contentHashes = new HashMap<>();
+    private ClassSnapshot snapshot;
 
     private static class Transformation {
         String packageName;
@@ -68,7 +74,7 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, Cla
         } catch (IOException e) {
             throw new RuntimeException("Error reading resources", e);
         }
-        renamer = new ClassRefsRenamer(new CachedMapper<>(classNameMapper));
+        renamer = ThreadLocal.withInitial(() -> new ClassRefsRenamer(new CachedMapper<>(classNameMapper)));
         this.classLoader = classLoader;
     }
 
@@ -98,8 +104,23 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, Cla
         return transformation;
     }
 
+    /**
+     * <p>Sets snapshot of already parsed classes. Classes found in snapshot are taken from it instead of being
+     * parsed, as long as their class files did not change since snapshot was built.</p>
+     */
+    public void setSnapshot(ClassSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     @Override
     public ClassHolder map(String name) {
+        if (snapshot != null && snapshot.contains(name)) {
+            String hash = getContentHash(name);
+            ClassHolder classHolder = hash != null ? snapshot.get(name, hash) : null;
+            if (classHolder != null) {
+                return classHolder;
+            }
+        }
         for (Transformation transformation : transformations) {
             if (name.startsWith(transformation.packageName)) {
                 int index = name.lastIndexOf('.');
@@ -108,7 +129,7 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, Cla
                 ClassHolder classHolder = innerMapper.map(transformation.packagePrefix + packageName
                         + "." + transformation.classPrefix + className);
                 if (classHolder != null) {
-                    classHolder = renamer.rename(classHolder);
+                    classHolder = renamer.get().rename(classHolder);
                 }
                 return classHolder;
             }
@@ -116,7 +137,7 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, Cla
         return innerMapper.map(name);
     }
 
-    private String renameClass(String name) {
+    public String renameClass(String name) {
         for (Transformation transformation : transformations) {
             if (name.startsWith(transformation.fullPrefix)) {
                 int index = name.lastIndexOf('.');
@@ -190,7 +211,75 @@ public class ClasspathResourceMapper implements Mapper<String, ClassHolder>, Cla
         }
     }
 
+    @Override
+    public synchronized String getContentHash(String className) {
+        ContentHash hash = contentHashes.get(className);
+        if (hash == null) {
+            hash = new ContentHash();
+            contentHashes.put(className, hash);
+            hash.value = calculateContentHash(className);
+        }
+        return hash.value;
+    }
+
+    private String calculateContentHash(String className) {
+        int dotIndex = className.lastIndexOf('.');
+        String packageName;
+        String simpleName;
+        if (dotIndex > 0) {
+            packageName = className.substring(0, dotIndex + 1);
+            simpleName = className.substring(dotIndex + 1);
+        } else {
+            packageName = "";
+            simpleName = className;
+        }
+        for (Transformation transformation : transformations) {
+            if (packageName.startsWith(transformation.packageName)) {
+                String fullName = transformation.packagePrefix + packageName + transformation.classPrefix + simpleName;
+                String hash = getOriginalContentHash(fullName);
+                if (hash != null) {
+                    return hash;
+                }
+            }
+        }
+        return getOriginalContentHash(className);
+    }
+
+    private String getOriginalContentHash(String className) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        try (InputStream input = classLoader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (input == null) {
+                return null;
+            }
+            byte[] buffer = new byte[4096];
+            while (true) {
+                int bytesRead = input.read(buffer);
+                if (bytesRead < 0) {
+                    break;
+                }
+                digest.update(buffer, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            // If class file can't be read, we just report that class should be reparsed
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
     static class ModificationDate {
         Date date;
     }
+
+    static class ContentHash {
+        String value;
+    }
 }
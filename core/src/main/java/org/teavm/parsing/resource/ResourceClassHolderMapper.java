@@ -17,6 +17,7 @@ package org.teavm.parsing.resource;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.function.Consumer;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.tree.ClassNode;
 import org.teavm.common.Mapper;
@@ -25,13 +26,23 @@ import org.teavm.model.ReferenceCache;
 import org.teavm.parsing.Parser;
 
 public class ResourceClassHolderMapper implements Mapper<String, ClassHolder> {
-    private Parser parser = new Parser(new ReferenceCache());
+    private static final int CONSTANT_CLASS = 7;
+    private ThreadLocal<Parser> parser = ThreadLocal.withInitial(() -> new Parser(new ReferenceCache()));
     private ResourceReader resourceReader;
+    private volatile Consumer<String> referenceConsumer;
 
     public ResourceClassHolderMapper(ResourceReader resourceReader) {
         this.resourceReader = resourceReader;
     }
 
+    /**
+     * <p>Sets consumer that receives names of classes referenced from constant pool of each parsed class file.
+     * Consumer may be called from any thread that calls {@link #map(String)}.</p>
+     */
+    public void setReferenceConsumer(Consumer<String> referenceConsumer) {
+        this.referenceConsumer = referenceConsumer;
+    }
+
     @Override
     public ClassHolder map(String name) {
         ClassNode clsNode = new ClassNode();
@@ -42,9 +53,32 @@ public class ResourceClassHolderMapper implements Mapper<String, ClassHolder> {
         try (InputStream input = resourceReader.openResource(resourceName)) {
             ClassReader reader = new ClassReader(input);
             reader.accept(clsNode, 0);
+            Consumer<String> consumer = referenceConsumer;
+            if (consumer != null) {
+                reportReferences(reader, consumer);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return parser.parseClass(clsNode);
+        return parser.get().parseClass(clsNode);
+    }
+
+    private static void reportReferences(ClassReader reader, Consumer<String> consumer) {
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < reader.getItemCount(); ++i) {
+            int offset = reader.getItem(i);
+            if (offset == 0 || reader.b[offset - 1] != CONSTANT_CLASS) {
+                continue;
+            }
+            String name = reader.readUTF8(offset, buffer);
+            if (name.startsWith("[")) {
+                int index = name.lastIndexOf('[') + 1;
+                if (name.charAt(index) != 'L') {
+                    continue;
+                }
+                name = name.substring(index + 1, name.length() - 1);
+            }
+            consumer.accept(name.replace('/', '.'));
+        }
     }
 }
@@ -0,0 +1,263 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.vm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.teavm.common.ParallelTasks;
+
+/**
+ * <p>Collects timings and counters of a build. Pass an instance to {@link TeaVM#setStatistics(BuildStatistics)}
+ * before the build and read it after the build completes.</p>
+ *
+ * <p>For every phase statistics keep wall clock time, number of bytes allocated by the thread that runs
+ * the build and by worker threads of {@link ParallelTasks} (when JVM is able to tell it), and heap usage
+ * at the end of the phase. Workers that run for other builds in the same JVM at the same time are counted too.
+ * Time spent in each method optimization is summed over all methods and threads.
+ * Counters are arbitrary named numbers, such as number of dependency nodes or cache hits.</p>
+ */
+public class BuildStatistics {
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Optimization> optimizations = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    /**
+     * <p>Starts measuring a phase. Phase ends when returned timer is closed.</p>
+     */
+    public Timer startPhase(String name) {
+        return new Timer(name);
+    }
+
+    public synchronized void addOptimizationTime(String name, long nanos, boolean changed) {
+        optimizations.computeIfAbsent(name, Optimization::new).add(nanos, 1, changed ? 1 : 0);
+    }
+
+    /**
+     * <p>Creates buffer for optimization times of a single task, so that tasks running in parallel
+     * update statistics once, when buffer is merged, rather than after every optimization.</p>
+     */
+    public OptimizationTimes createOptimizationTimes() {
+        return new OptimizationTimes();
+    }
+
+    public synchronized void setCounter(String name, long value) {
+        counters.put(name, value);
+    }
+
+    public synchronized void addCounter(String name, long value) {
+        counters.merge(name, value, Long::sum);
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    public synchronized List<Optimization> getOptimizations() {
+        return Collections.unmodifiableList(new ArrayList<>(optimizations.values()));
+    }
+
+    public synchronized Map<String, Long> getCounters() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(counters));
+    }
+
+    public synchronized void writeJson(Writer writer) throws IOException {
+        writer.append("{\n  \"phases\": [");
+        for (int i = 0; i < phases.size(); ++i) {
+            Phase phase = phases.get(i);
+            writer.append(i > 0 ? ",\n    " : "\n    ");
+            writer.append("{ \"name\": ").append(quote(phase.name))
+                    .append(", \"timeMillis\": ").append(millis(phase.timeNanos))
+                    .append(", \"allocatedBytes\": ").append(String.valueOf(phase.allocatedBytes))
+                    .append(", \"heapUsedBytes\": ").append(String.valueOf(phase.heapUsedBytes))
+                    .append(" }");
+        }
+        writer.append(phases.isEmpty() ? "],\n" : "\n  ],\n");
+
+        writer.append("  \"optimizations\": [");
+        boolean first = true;
+        for (Optimization optimization : optimizations.values()) {
+            writer.append(!first ? ",\n    " : "\n    ");
+            first = false;
+            writer.append("{ \"name\": ").append(quote(optimization.name))
+                    .append(", \"timeMillis\": ").append(millis(optimization.timeNanos))
+                    .append(", \"invocations\": ").append(String.valueOf(optimization.invocationCount))
+                    .append(", \"changes\": ").append(String.valueOf(optimization.changeCount))
+                    .append(" }");
+        }
+        writer.append(optimizations.isEmpty() ? "],\n" : "\n  ],\n");
+
+        writer.append("  \"counters\": {");
+        first = true;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            writer.append(!first ? ",\n    " : "\n    ");
+            first = false;
+            writer.append(quote(counter.getKey())).append(": ").append(String.valueOf(counter.getValue()));
+        }
+        writer.append(counters.isEmpty() ? "}\n" : "\n  }\n");
+        writer.append("}\n");
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(nanos / 1000 / 1000.0);
+    }
+
+    private static long allocatedBytes() {
+        long currentThreadBytes = ParallelTasks.currentThreadAllocatedBytes();
+        long workerBytes = ParallelTasks.getWorkerAllocatedBytes();
+        return currentThreadBytes >= 0 && workerBytes >= 0 ? currentThreadBytes + workerBytes : -1;
+    }
+
+    public final class OptimizationTimes {
+        private final Map<String, Optimization> optimizations = new LinkedHashMap<>();
+
+        OptimizationTimes() {
+        }
+
+        public void add(String name, long nanos, boolean changed) {
+            optimizations.computeIfAbsent(name, Optimization::new).add(nanos, 1, changed ? 1 : 0);
+        }
+
+        public void merge() {
+            synchronized (BuildStatistics.this) {
+                for (Optimization optimization : optimizations.values()) {
+                    BuildStatistics.this.optimizations.computeIfAbsent(optimization.name, Optimization::new)
+                            .add(optimization.timeNanos, optimization.invocationCount, optimization.changeCount);
+                }
+            }
+            optimizations.clear();
+        }
+    }
+
+    public final class Timer implements AutoCloseable {
+        private final String name;
+        private final long startTime;
+        private final long startAllocatedBytes;
+        private boolean closed;
+
+        Timer(String name) {
+            this.name = name;
+            startAllocatedBytes = allocatedBytes();
+            startTime = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            long time = System.nanoTime() - startTime;
+            long allocatedBytes = allocatedBytes();
+            if (allocatedBytes >= 0 && startAllocatedBytes >= 0) {
+                allocatedBytes -= startAllocatedBytes;
+            } else {
+                allocatedBytes = -1;
+            }
+            Runtime runtime = Runtime.getRuntime();
+            long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+            synchronized (BuildStatistics.this) {
+                phases.add(new Phase(name, time, allocatedBytes, heapUsed));
+            }
+        }
+    }
+
+    public static final class Phase {
+        private final String name;
+        private final long timeNanos;
+        private final long allocatedBytes;
+        private final long heapUsedBytes;
+
+        Phase(String name, long timeNanos, long allocatedBytes, long heapUsedBytes) {
+            this.name = name;
+            this.timeNanos = timeNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.heapUsedBytes = heapUsedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        /**
+         * @return bytes allocated by the thread that runs the build and by worker threads, or -1 if JVM
+         * does not support allocation measurement.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getHeapUsedBytes() {
+            return heapUsedBytes;
+        }
+    }
+
+    public static final class Optimization {
+        private final String name;
+        private long timeNanos;
+        private int invocationCount;
+        private int changeCount;
+
+        Optimization(String name) {
+            this.name = name;
+        }
+
+        void add(long timeNanos, int invocationCount, int changeCount) {
+            this.timeNanos += timeNanos;
+            this.invocationCount += invocationCount;
+            this.changeCount += changeCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTimeNanos() {
+            return timeNanos;
+        }
+
+        public int getInvocationCount() {
+            return invocationCount;
+        }
+
+        public int getChangeCount() {
+            return changeCount;
+        }
+    }
+}
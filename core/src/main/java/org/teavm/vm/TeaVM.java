@@ -26,8 +26,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.teavm.cache.NoCache;
+import org.teavm.common.ParallelTasks;
 import org.teavm.common.ServiceRepository;
 import org.teavm.dependency.BootstrapMethodSubstitutor;
 import org.teavm.dependency.DependencyChecker;
@@ -114,12 +116,14 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
     private final Properties properties = new Properties();
     private ProgramCache programCache;
     private boolean incremental;
+    private int threadCount = 1;
     private TeaVMOptimizationLevel optimizationLevel = TeaVMOptimizationLevel.SIMPLE;
     private TeaVMProgressListener progressListener;
-    private boolean cancelled;
+    private volatile boolean cancelled;
     private ListableClassHolderSource writtenClasses;
     private TeaVMTarget target;
     private Map<Class<?>, TeaVMHostExtension> extensions = new HashMap<>();
+    private BuildStatistics statistics;
 
     TeaVM(TeaVMBuilder builder) {
         target = builder.target;
@@ -212,6 +216,21 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         this.optimizationLevel = optimizationLevel;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Specifies how many threads TeaVM may use to process methods independently of each other.
+     * Output does not depend on this value.
+     *
+     * @param threadCount number of threads. Values less than two mean that everything is done
+     * in the calling thread.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public TeaVMProgressListener getProgressListener() {
         return progressListener;
     }
@@ -224,6 +243,17 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         return cancelled;
     }
 
+    public BuildStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Specifies where to collect timings and counters of the build. By default nothing is collected.
+     */
+    public void setStatistics(BuildStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     public ProblemProvider getProblemProvider() {
         return diagnostics;
     }
@@ -343,8 +373,12 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         }
 
         dependencyChecker.setInterruptor(() -> progressListener.progressReached(0) == TeaVMProgressFeedback.CONTINUE);
-        target.contributeDependencies(dependencyChecker);
-        dependencyChecker.processDependencies();
+        dependencyChecker.setThreadCount(threadCount);
+        try (BuildStatistics.Timer timer = startPhase("dependencies")) {
+            target.contributeDependencies(dependencyChecker);
+            dependencyChecker.processDependencies();
+        }
+        reportDependencyStatistics();
         if (wasCancelled() || !diagnostics.getSevereProblems().isEmpty()) {
             return;
         }
@@ -354,7 +388,10 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         if (wasCancelled()) {
             return;
         }
-        ListableClassHolderSource classSet = link(dependencyChecker);
+        ListableClassHolderSource classSet;
+        try (BuildStatistics.Timer timer = startPhase("linking")) {
+            classSet = link(dependencyChecker);
+        }
         writtenClasses = classSet;
         if (wasCancelled()) {
             return;
@@ -364,30 +401,53 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         reportPhase(TeaVMPhase.OPTIMIZATION, 1);
 
         if (!incremental) {
-            devirtualize(classSet, dependencyChecker);
+            try (BuildStatistics.Timer timer = startPhase("devirtualization")) {
+                devirtualize(classSet, dependencyChecker);
+            }
             if (wasCancelled()) {
                 return;
             }
 
-            inline(classSet, dependencyChecker);
+            try (BuildStatistics.Timer timer = startPhase("inlining")) {
+                inline(classSet, dependencyChecker);
+            }
             if (wasCancelled()) {
                 return;
             }
         }
 
-        optimize(classSet);
+        try (BuildStatistics.Timer timer = startPhase("optimization")) {
+            optimize(classSet);
+        }
         if (wasCancelled()) {
             return;
         }
 
         // Render
-        try {
+        try (BuildStatistics.Timer timer = startPhase("emit")) {
             target.emit(classSet, buildTarget, outputName);
         } catch (IOException e) {
             throw new RuntimeException("Error generating output files", e);
         }
     }
 
+    private BuildStatistics.Timer startPhase(String name) {
+        return statistics != null ? statistics.startPhase(name) : null;
+    }
+
+    private void reportDependencyStatistics() {
+        if (statistics == null) {
+            return;
+        }
+        statistics.setCounter("dependency.classes", dependencyChecker.getReachableClasses().size());
+        statistics.setCounter("dependency.methods", dependencyChecker.getReachableMethods().size());
+        statistics.setCounter("dependency.fields", dependencyChecker.getReachableFields().size());
+        statistics.setCounter("dependency.nodes", dependencyChecker.getNodeCount());
+        statistics.setCounter("dependency.types", dependencyChecker.getTypeCount());
+        statistics.setCounter("dependency.tasks", dependencyChecker.getExecutedTaskCount());
+        statistics.setCounter("dependency.propagationRounds", dependencyChecker.getPropagationRoundCount());
+    }
+
     @SuppressWarnings("WeakerAccess")
     public ListableClassHolderSource link(DependencyInfo dependency) {
         reportPhase(TeaVMPhase.LINKING, dependency.getReachableClasses().size());
@@ -441,85 +501,151 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             return;
         }
 
-        Map<MethodReference, Program> inlinedPrograms = new HashMap<>();
-        Inlining inlining = new Inlining();
-        for (String className : classes.getClassNames()) {
-            ClassHolder cls = classes.get(className);
-            for (MethodHolder method : cls.getMethods()) {
-                if (method.getProgram() != null) {
-                    Program program = ProgramUtils.copy(method.getProgram());
-                    MethodOptimizationContextImpl context = new MethodOptimizationContextImpl(method, classes);
-                    inlining.apply(program, method.getReference(), classes, dependencyInfo);
-                    new UnusedVariableElimination().optimize(context, program);
-                    inlinedPrograms.put(method.getReference(), program);
-                }
-            }
-            if (wasCancelled()) {
-                return;
-            }
+        List<MethodHolder> methods = getMethodsWithPrograms(classes);
+        reportPhase(TeaVMPhase.OPTIMIZATION, methods.size());
+        if (wasCancelled()) {
+            return;
+        }
+
+        // Inlining reads original programs only, so methods can be processed in any order
+        Map<MethodReference, Program> inlinedPrograms = new ConcurrentHashMap<>();
+        ParallelTasks.forEach(threadCount, methods, method -> {
+            Program program = ProgramUtils.copy(method.getProgram());
+            MethodOptimizationContextImpl context = new MethodOptimizationContextImpl(method, classes);
+            new Inlining().apply(program, method.getReference(), classes, dependencyInfo);
+            new UnusedVariableElimination().optimize(context, program);
+            inlinedPrograms.put(method.getReference(), program);
+        }, this::reportProgress);
+        if (wasCancelled()) {
+            return;
         }
 
+        for (MethodHolder method : methods) {
+            method.setProgram(inlinedPrograms.get(method.getReference()));
+        }
+    }
+
+    private List<MethodHolder> getMethodsWithPrograms(ListableClassHolderSource classes) {
+        List<MethodHolder> methods = new ArrayList<>();
         for (String className : classes.getClassNames()) {
             ClassHolder cls = classes.get(className);
             for (MethodHolder method : cls.getMethods()) {
                 if (method.getProgram() != null) {
-                    method.setProgram(inlinedPrograms.get(method.getReference()));
+                    methods.add(method);
                 }
             }
         }
+        return methods;
+    }
+
+    private boolean reportProgress(int progress) {
+        if (progressListener.progressReached(progress) == TeaVMProgressFeedback.CANCEL) {
+            cancelled = true;
+        }
+        return !cancelled;
     }
 
     private void optimize(ListableClassHolderSource classSource) {
-        for (String className : classSource.getClassNames()) {
-            ClassHolder cls = classSource.get(className);
-            for (MethodHolder method : cls.getMethods()) {
-                processMethod(method, classSource);
-            }
-            if (wasCancelled()) {
-                return;
+        List<MethodHolder> methods = getMethodsWithPrograms(classSource);
+
+        Map<MethodHolder, Program> cachedPrograms = new HashMap<>();
+        List<MethodHolder> methodsToOptimize = new ArrayList<>();
+        for (MethodHolder method : methods) {
+            Program cachedProgram = getCachedProgram(method);
+            if (cachedProgram != null) {
+                cachedPrograms.put(method, cachedProgram);
+            } else {
+                methodsToOptimize.add(method);
             }
         }
-    }
+        if (wasCancelled()) {
+            return;
+        }
+        if (statistics != null) {
+            statistics.setCounter("optimization.cachedMethods", cachedPrograms.size());
+            statistics.setCounter("optimization.optimizedMethods", methodsToOptimize.size());
+        }
 
-    private void processMethod(MethodHolder method, ListableClassReaderSource classSource) {
-        if (method.getProgram() == null) {
+        reportPhase(TeaVMPhase.OPTIMIZATION, methodsToOptimize.size());
+        if (wasCancelled()) {
+            return;
+        }
+        Map<MethodHolder, Program> optimizedPrograms = new ConcurrentHashMap<>();
+        ParallelTasks.forEach(threadCount, methodsToOptimize,
+                method -> optimizedPrograms.put(method, optimizeMethod(method, classSource)), this::reportProgress);
+        if (wasCancelled()) {
             return;
         }
 
+        // Targets may accumulate state across methods, so we call them in a predictable order
+        List<MethodHolder> methodsToAllocate = new ArrayList<>();
+        for (MethodHolder method : methodsToOptimize) {
+            Program optimizedProgram = optimizedPrograms.get(method);
+            if (optimizedProgram.basicBlockCount() > 0) {
+                target.afterOptimizations(optimizedProgram, method, classSource);
+                methodsToAllocate.add(method);
+            }
+        }
+        if (target.requiresRegisterAllocation()) {
+            ParallelTasks.forEach(threadCount, methodsToAllocate, method -> {
+                RegisterAllocator allocator = new RegisterAllocator();
+                allocator.allocateRegisters(method, optimizedPrograms.get(method));
+            });
+        }
+
+        for (MethodHolder method : methods) {
+            Program optimizedProgram = cachedPrograms.get(method);
+            if (optimizedProgram == null) {
+                optimizedProgram = optimizedPrograms.get(method);
+                if (incremental && programCache != null) {
+                    programCache.store(method.getReference(), optimizedProgram);
+                }
+            }
+            method.setProgram(optimizedProgram);
+        }
+    }
+
+    private Program getCachedProgram(MethodHolder method) {
+        if (!incremental || programCache == null) {
+            return null;
+        }
         boolean noCache = method.getAnnotations().get(NoCache.class.getName()) != null;
-        Program optimizedProgram = incremental && !noCache && programCache != null
-                ? programCache.get(method.getReference()) : null;
+        return !noCache ? programCache.get(method.getReference()) : null;
+    }
+
+    private Program optimizeMethod(MethodHolder method, ListableClassReaderSource classSource) {
         MethodOptimizationContextImpl context = new MethodOptimizationContextImpl(method, classSource);
-        if (optimizedProgram == null) {
-            optimizedProgram = ProgramUtils.copy(method.getProgram());
-            if (optimizedProgram.basicBlockCount() > 0) {
-                boolean changed;
-                do {
-                    changed = false;
-                    for (MethodOptimization optimization : getOptimizations()) {
-                        try {
+        Program optimizedProgram = ProgramUtils.copy(method.getProgram());
+        BuildStatistics.OptimizationTimes optimizationTimes = statistics != null ? statistics.createOptimizationTimes() : null;
+        if (optimizedProgram.basicBlockCount() > 0) {
+            boolean changed;
+            do {
+                changed = false;
+                for (MethodOptimization optimization : getOptimizations()) {
+                    try {
+                        if (optimizationTimes != null) {
+                            long start = System.nanoTime();
+                            boolean optimizationChanged = optimization.optimize(context, optimizedProgram);
+                            optimizationTimes.add(optimization.getClass().getSimpleName(),
+                                    System.nanoTime() - start, optimizationChanged);
+                            changed |= optimizationChanged;
+                        } else {
                             changed |= optimization.optimize(context, optimizedProgram);
-                        } catch (Exception | AssertionError e) {
-                            ListingBuilder listingBuilder = new ListingBuilder();
-                            String listing = listingBuilder.buildListing(optimizedProgram, "");
-                            System.err.println("Error optimizing program for method " + method.getReference()
-                                    + ":\n" + listing);
-                            throw new RuntimeException(e);
                         }
+                    } catch (Exception | AssertionError e) {
+                        ListingBuilder listingBuilder = new ListingBuilder();
+                        String listing = listingBuilder.buildListing(optimizedProgram, "");
+                        System.err.println("Error optimizing program for method " + method.getReference()
+                                + ":\n" + listing);
+                        throw new RuntimeException(e);
                     }
-                } while (changed);
-
-                target.afterOptimizations(optimizedProgram, method, classSource);
-                if (target.requiresRegisterAllocation()) {
-                    RegisterAllocator allocator = new RegisterAllocator();
-                    allocator.allocateRegisters(method, optimizedProgram);
                 }
-            }
-            if (incremental && programCache != null) {
-                programCache.store(method.getReference(), optimizedProgram);
-            }
+            } while (changed);
         }
-        method.setProgram(optimizedProgram);
+        if (optimizationTimes != null) {
+            optimizationTimes.merge();
+        }
+        return optimizedProgram;
     }
 
     private class MethodOptimizationContextImpl implements MethodOptimizationContext {
@@ -651,6 +777,11 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
             return incremental;
         }
 
+        @Override
+        public int getThreadCount() {
+            return threadCount;
+        }
+
         @Override
         public Map<String, TeaVMEntryPoint> getEntryPoints() {
             return readonlyEntryPoints;
@@ -660,5 +791,10 @@ public class TeaVM implements TeaVMHost, ServiceRepository {
         public Map<String, String> getExportedClasses() {
             return readonlyExportedClasses;
         }
+
+        @Override
+        public BuildStatistics getStatistics() {
+            return statistics;
+        }
     };
 }
@@ -39,7 +39,14 @@ public interface TeaVMTargetController {
 
     boolean isIncremental();
 
+    int getThreadCount();
+
     Map<String, TeaVMEntryPoint> getEntryPoints();
 
     Map<String, String> getExportedClasses();
+
+    /**
+     * @return statistics of the current build, or null if they are not collected.
+     */
+    BuildStatistics getStatistics();
 }
@@ -31,17 +31,52 @@ function $rt_isInstance(obj, cls) {
     return obj !== null && !!obj.constructor.$meta && $rt_isAssignable(obj.constructor, cls);
 }
 function $rt_isAssignable(from, to) {
+    if (from === to) {
+        return true;
+    }
+    var fromMeta = from.$meta;
+    var toMeta = to.$meta;
+    if (fromMeta.tagUpper > 0 && toMeta.tag >= 0) {
+        if (toMeta.tagUpper > 0) {
+            return fromMeta.tag >= toMeta.tag && fromMeta.tag < toMeta.tagUpper;
+        }
+        return $rt_interfaceTags(from)[toMeta.tag] === true;
+    }
+    return $rt_isAssignableSlow(from, to);
+}
+function $rt_isAssignableSlow(from, to) {
     if (from === to) {
         return true;
     }
     var supertypes = from.$meta.supertypes;
     for (var i = 0; i < supertypes.length; i = (i + 1) | 0) {
-        if ($rt_isAssignable(supertypes[i], to)) {
+        if ($rt_isAssignableSlow(supertypes[i], to)) {
             return true;
         }
     }
     return false;
 }
+function $rt_interfaceTags(cls) {
+    var meta = cls.$meta;
+    var result = meta.interfaceTags;
+    if (result === null) {
+        result = {};
+        var supertypes = meta.supertypes;
+        for (var i = 0; i < supertypes.length; i = (i + 1) | 0) {
+            var supertype = supertypes[i];
+            var supertypeMeta = supertype.$meta;
+            if (supertypeMeta.tag >= 0 && supertypeMeta.tagUpper === 0) {
+                result[supertypeMeta.tag] = true;
+            }
+            var inherited = $rt_interfaceTags(supertype);
+            for (var tag in inherited) {
+                result[tag] = true;
+            }
+        }
+        meta.interfaceTags = result;
+    }
+    return result;
+}
 function $rt_createArray(cls, sz) {
     var data = new Array(sz);
     var arr = new ($rt_arraycls(cls))(data);
@@ -125,7 +160,7 @@ function $rt_arraycls(cls) {
             this.data = data;
             this.$id = 0;
         };
-        arraycls.prototype = new ($rt_objcls())();
+        arraycls.prototype = new ($rt_initClass($rt_objcls()))();
         arraycls.prototype.constructor = arraycls;
         arraycls.prototype.toString = function() {
             var str = "[";
@@ -231,7 +266,7 @@ function $rt_voidcls() {
     return $rt_voidclsCache;
 }
 function $rt_init(cls, constructor, args) {
-    var obj = new cls();
+    var obj = new ($rt_initClass(cls))();
     cls.prototype[constructor].apply(obj, args);
     return obj;
 }
@@ -375,44 +410,87 @@ function $rt_putStderr(ch) {
     }
 }
 function $rt_metadata(data) {
-    for (var i = 0; i < data.length; i += 7) {
+    for (var i = 0; i < data.length; i += 9) {
+        $rt_setupMetadata(data[i], data, i + 1);
+    }
+}
+function $rt_lazyMetadata(data) {
+    for (var i = 0; i < data.length; i += 2) {
         var cls = data[i];
-        cls.$meta = {};
-        var m = cls.$meta;
-        m.name = data[i + 1];
-        m.binaryName = "L" + m.name + ";";
-        var superclass = data[i + 2];
-        m.superclass = superclass !== 0 ? superclass : null;
-        m.supertypes = data[i + 3];
-        if (m.superclass) {
-            m.supertypes.push(m.superclass);
-            cls.prototype = new m.superclass();
-        } else {
-            cls.prototype = {};
-        }
-        var flags = data[i + 4];
-        m.enum = (flags & 1) != 0;
-        m.primitive = false;
-        m.item = null;
-        cls.prototype.constructor = cls;
+        cls.$lazyMetadata = data[i + 1];
+        cls.prototype = new Proxy({ cls : cls }, $rt_lazyPrototypeHandler);
         cls.classObject = null;
-        var clinit = data[i + 5];
-        cls.$clinit = clinit !== 0 ? clinit : function() {};
-
-        var virtualMethods = data[i + 6];
-        for (var j = 0; j < virtualMethods.length; j += 2) {
-            var name = virtualMethods[j];
-            var func = virtualMethods[j + 1];
-            if (typeof name === 'string') {
-                name = [name];
-            }
-            for (var k = 0; k < name.length; ++k) {
-                cls.prototype[name[k]] = func;
-            }
+        cls.$clinit = $rt_lazyClinit;
+        cls.$array = null;
+        Object.defineProperty(cls, "$meta", $rt_lazyMetaDescriptor);
+    }
+}
+var $rt_lazyMetaDescriptor = {
+    get : function() {
+        return $rt_initClass(this).$meta;
+    },
+    configurable : true
+};
+var $rt_lazyPrototypeHandler = {
+    get : function(target, name, receiver) {
+        var prototype = $rt_initClass(target.cls).prototype;
+        if (Object.getPrototypeOf(receiver) !== prototype) {
+            Object.setPrototypeOf(receiver, prototype);
         }
+        return prototype[name];
+    }
+};
+function $rt_lazyClinit() {
+    return $rt_initClass(this).$clinit();
+}
+function $rt_initClass(cls) {
+    var lazyMetadata = cls.$lazyMetadata;
+    if (lazyMetadata) {
+        cls.$lazyMetadata = null;
+        delete cls.$meta;
+        $rt_setupMetadata(cls, lazyMetadata(), 0);
+    }
+    return cls;
+}
+function $rt_setupMetadata(cls, data, i) {
+    cls.$meta = {};
+    var m = cls.$meta;
+    m.name = data[i];
+    m.binaryName = "L" + m.name + ";";
+    var superclass = data[i + 1];
+    m.superclass = superclass !== 0 ? superclass : null;
+    m.supertypes = data[i + 2];
+    if (m.superclass) {
+        m.supertypes.push(m.superclass);
+        cls.prototype = new ($rt_initClass(m.superclass))();
+    } else {
+        cls.prototype = {};
+    }
+    var flags = data[i + 3];
+    m.enum = (flags & 1) != 0;
+    m.primitive = false;
+    m.item = null;
+    m.tag = data[i + 6];
+    m.tagUpper = data[i + 7];
+    m.interfaceTags = null;
+    cls.prototype.constructor = cls;
+    cls.classObject = null;
+    var clinit = data[i + 4];
+    cls.$clinit = clinit !== 0 ? clinit : function() {};
 
-        cls.$array = null;
+    var virtualMethods = data[i + 5];
+    for (var j = 0; j < virtualMethods.length; j += 2) {
+        var name = virtualMethods[j];
+        var func = virtualMethods[j + 1];
+        if (typeof name === 'string') {
+            name = [name];
+        }
+        for (var k = 0; k < name.length; ++k) {
+            cls.prototype[name[k]] = func;
+        }
     }
+
+    cls.$array = null;
 }
 function $rt_threadStarter(f) {
     return function() {
@@ -434,15 +512,34 @@ function $rt_mainStarter(f) {
         $rt_threadStarter(f)(javaArgs);
     };
 }
+function $rt_charArrayToString(array, offset, size) {
+    var result = "";
+    var end = offset + size;
+    if (size <= 16) {
+        for (var j = offset; j < end; j = (j + 1) | 0) {
+            result += String.fromCharCode(array[j]);
+        }
+        return result;
+    }
+    for (var i = offset; i < end; i = (i + 1024) | 0) {
+        var next = Math.min(end, (i + 1024) | 0);
+        result += String.fromCharCode.apply(null, array.subarray ? array.subarray(i, next) : array.slice(i, next));
+    }
+    return result;
+}
 var $rt_stringPool_instance;
+var $rt_stringPool_source;
 function $rt_stringPool(strings) {
+    $rt_stringPool_source = strings;
     $rt_stringPool_instance = new Array(strings.length);
-    for (var i = 0; i < strings.length; ++i) {
-        $rt_stringPool_instance[i] = $rt_intern($rt_str(strings[i]));
-    }
 }
 function $rt_s(index) {
-    return $rt_stringPool_instance[index];
+    var result = $rt_stringPool_instance[index];
+    if (result === undefined) {
+        result = $rt_intern($rt_str($rt_stringPool_source[index]));
+        $rt_stringPool_instance[index] = result;
+    }
+    return result;
 }
 function TeaVMThread(runner) {
     this.status = 3;
@@ -542,7 +639,7 @@ function $dbg_repr(obj) {
     return obj.toString ? obj.toString() : "";
 }
 function $dbg_class(obj) {
-    if (obj instanceof Long) {
+    if (obj instanceof Long || typeof obj === "bigint") {
         return "long";
     }
     var cls = obj.constructor;
@@ -617,6 +714,9 @@ function Long_toNumber(val) {
     }
     return 0x100000000 * hi + lo;
 }
+function Long_hashCode(a) {
+    return a.hi ^ a.lo;
+}
 function Long_eq(a, b) {
     return a.hi === b.hi && a.lo === b.lo;
 }
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.codegen;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.ValueType;
+
+public class DefaultNamingStrategyTest {
+    private static final MethodDescriptor FOO = new MethodDescriptor("foo", ValueType.VOID);
+    private static final MethodDescriptor FOO_INT = new MethodDescriptor("foo", ValueType.INTEGER, ValueType.VOID);
+
+    @Test
+    public void forkGivesSameNamesWithoutChangingParent() {
+        DefaultNamingStrategy naming = new DefaultNamingStrategy(new DefaultAliasProvider(), name -> null);
+        assertThat(naming.getNameFor("a.b.Foo"), is("ab_Foo"));
+
+        DefaultNamingStrategy fork = naming.fork();
+        assertThat(fork.getNameFor("a.b.Foo"), is("ab_Foo"));
+        assertThat(fork.getNameFor("a.c.Foo"), is("ac_Foo"));
+        assertThat(fork.getNameFor(FOO), is("$foo"));
+
+        assertThat(naming.getNameFor(FOO_INT), is("$foo"));
+        assertThat(naming.getNameFor("a.b.Foo"), is("ab_Foo"));
+    }
+
+    @Test
+    public void committedNamesAreKeptUnique() {
+        DefaultNamingStrategy naming = new DefaultNamingStrategy(new DefaultAliasProvider(), name -> null);
+        DefaultNamingStrategy fork = naming.fork();
+        assertThat(fork.getNameFor(FOO), is("$foo"));
+        fork.commit();
+
+        assertThat(naming.getNameFor(FOO), is("$foo"));
+        assertThat(naming.getNameFor(FOO_INT), is("$foo1"));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.model.AccessLevel;
+import org.teavm.model.AnnotationHolder;
+import org.teavm.model.AnnotationValue;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.FieldHolder;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.ValueType;
+
+public class ClassSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsClasses() throws IOException {
+        ClassHolder cls = new ClassHolder("foo.Bar");
+        cls.setParent("java.lang.Object");
+        cls.getInterfaces().add("java.lang.Runnable");
+        cls.setLevel(AccessLevel.PUBLIC);
+        cls.getModifiers().add(ElementModifier.FINAL);
+        AnnotationHolder annotation = new AnnotationHolder("foo.Annot");
+        annotation.getValues().put("value", new AnnotationValue(1.5f));
+        cls.getAnnotations().add(annotation);
+        FieldHolder field = new FieldHolder("count");
+        field.setType(ValueType.INTEGER);
+        field.setInitialValue(23);
+        cls.addField(field);
+        MethodHolder method = new MethodHolder("run", ValueType.VOID);
+        method.getModifiers().add(ElementModifier.NATIVE);
+        cls.addMethod(method);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ClassSnapshot.Builder().add(cls, "hash").write(output);
+        ClassSnapshot snapshot = ClassSnapshot.read(new ByteArrayInputStream(output.toByteArray()));
+
+        ClassHolder result = snapshot.get("foo.Bar", "hash");
+        assertThat(result.getParent(), is("java.lang.Object"));
+        assertThat(result.getInterfaces().contains("java.lang.Runnable"), is(true));
+        assertThat(result.getLevel(), is(AccessLevel.PUBLIC));
+        assertThat(result.getModifiers().contains(ElementModifier.FINAL), is(true));
+        assertThat(result.getAnnotations().get("foo.Annot").getValue("value").getFloat(), is(1.5f));
+        assertThat(result.getField("count").getType(), is(ValueType.INTEGER));
+        assertThat(result.getField("count").getInitialValue(), is(23));
+        MethodHolder resultMethod = result.getMethod(method.getDescriptor());
+        assertThat(resultMethod.getModifiers().contains(ElementModifier.NATIVE), is(true));
+        assertThat(resultMethod.getProgram(), nullValue());
+    }
+
+    @Test
+    public void ignoresChangedClasses() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ClassSnapshot.Builder().add(new ClassHolder("foo.Bar"), "hash").write(output);
+        ClassSnapshot snapshot = ClassSnapshot.read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertThat(snapshot.contains("foo.Bar"), is(true));
+        assertThat(snapshot.get("foo.Bar", "other-hash"), nullValue());
+        assertThat(snapshot.get("foo.Baz", "hash"), nullValue());
+    }
+
+    @Test
+    public void sharesSnapshotOfClassLoader() throws IOException {
+        File snapshotFile = new File(folder.getRoot(), ClassSnapshot.RESOURCE_NAME);
+        snapshotFile.getParentFile().mkdirs();
+        try (OutputStream output = new FileOutputStream(snapshotFile)) {
+            new ClassSnapshot.Builder().add(new ClassHolder("foo.Bar"), "hash").write(output);
+        }
+        ClassLoader classLoader = new URLClassLoader(new URL[] { folder.getRoot().toURI().toURL() }, null);
+        ClassSnapshot snapshot = ClassSnapshot.load(classLoader);
+
+        assertThat(ClassSnapshot.load(classLoader), sameInstance(snapshot));
+        assertThat(snapshot.contains("foo.Bar"), is(true));
+        assertThat(snapshot.get("foo.Bar", "hash").getName(), is("foo.Bar"));
+    }
+}
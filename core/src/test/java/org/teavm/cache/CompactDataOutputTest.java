@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+
+public class CompactDataOutputTest {
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactDataOutput output = new CompactDataOutput(bytes);
+        int[] ints = { 0, 1, -1, 63, -64, 64, 300, -300, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        long[] longs = { 0, -1, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (int value : ints) {
+            output.writeInt(value);
+        }
+        for (long value : longs) {
+            output.writeLong(value);
+        }
+        output.writeShort(-2);
+        output.writeShort(40000);
+        output.writeByte(-3);
+        output.writeChar('\uffff');
+        output.writeFloat(1.5f);
+        output.writeDouble(-0.25);
+        output.writeUTF("foo\u0000фу");
+        output.writeBoolean(true);
+
+        CompactDataInput input = new CompactDataInput(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int value : ints) {
+            assertThat(input.readInt(), is(value));
+        }
+        for (long value : longs) {
+            assertThat(input.readLong(), is(value));
+        }
+        assertThat(input.readShort(), is((short) -2));
+        assertThat(input.readShort(), is((short) 40000));
+        assertThat(input.readByte(), is((byte) -3));
+        assertThat(input.readChar(), is('\uffff'));
+        assertThat(input.readFloat(), is(1.5f));
+        assertThat(input.readDouble(), is(-0.25));
+        assertThat(input.readUTF(), is("foo\u0000фу"));
+        assertThat(input.readBoolean(), is(true));
+    }
+
+    @Test
+    public void writesSmallNumbersInSingleByte() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactDataOutput output = new CompactDataOutput(bytes);
+        output.writeInt(63);
+        output.writeInt(-64);
+        output.writeShort(-1);
+        assertThat(bytes.size(), is(3));
+    }
+
+    @Test
+    public void readsLines() throws IOException {
+        byte[] bytes = "a\r\nbc\rd\n\ne\r".getBytes("UTF-8");
+        CompactDataInput input = new CompactDataInput(new ByteArrayInputStream(bytes));
+        assertThat(input.readLine(), is("a"));
+        assertThat(input.readLine(), is("bc"));
+        assertThat(input.readByte(), is((byte) 'd'));
+        assertThat(input.readLine(), is(""));
+        assertThat(input.readLine(), is(""));
+        assertThat(input.readLine(), is("e"));
+        assertThat(input.readLine(), nullValue());
+    }
+}
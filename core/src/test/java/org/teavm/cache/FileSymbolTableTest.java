@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSymbolTableTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsIndexesBetweenSessions() throws IOException {
+        File file = new File(folder.getRoot(), "symbols");
+        FileSymbolTable table = new FileSymbolTable(file);
+        for (int i = 0; i < 100; ++i) {
+            assertThat(table.lookup("symbol" + i), is(i));
+        }
+        assertThat(table.lookup("фу"), is(100));
+        table.flush();
+
+        table = new FileSymbolTable(file);
+        table.update();
+        assertThat(table.at(100), is("фу"));
+        assertThat(table.lookup("symbol42"), is(42));
+        assertThat(table.lookup("other"), is(101));
+        assertThat(table.at(101), is("other"));
+        table.flush();
+
+        table = new FileSymbolTable(file);
+        table.update();
+        for (int i = 0; i < 100; ++i) {
+            assertThat(table.at(i), is("symbol" + i));
+        }
+        assertThat(table.lookup("other"), is(101));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWithoutIndex() throws IOException {
+        new FileSymbolTable(new File(folder.getRoot(), "symbols")).update();
+    }
+}
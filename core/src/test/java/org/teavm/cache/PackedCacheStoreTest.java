@@ -0,0 +1,193 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PackedCacheStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsEntriesAfterReopening() throws IOException {
+        File directory = folder.getRoot();
+        PackedCacheStore store = new PackedCacheStore(directory, "test");
+        store.write("foo", bytes("foo-value"));
+        store.write("bar", bytes("bar-value"));
+        assertThat(read(store, "foo"), is("foo-value"));
+        store.flush();
+
+        store = new PackedCacheStore(directory, "test");
+        assertThat(read(store, "foo"), is("foo-value"));
+        assertThat(read(store, "bar"), is("bar-value"));
+        assertThat(store.read("baz"), nullValue());
+    }
+
+    @Test
+    public void overwritesEntries() throws IOException {
+        File directory = folder.getRoot();
+        PackedCacheStore store = new PackedCacheStore(directory, "test");
+        store.write("foo", bytes("first"));
+        store.flush();
+        store.write("foo", bytes("second"));
+        store.write("bar", bytes("other"));
+        store.flush();
+
+        store = new PackedCacheStore(directory, "test");
+        assertThat(read(store, "foo"), is("second"));
+        assertThat(read(store, "bar"), is("other"));
+    }
+
+    @Test
+    public void compactsGarbage() throws IOException {
+        File directory = folder.getRoot();
+        byte[] largeValue = new byte[3 << 20];
+        Arrays.fill(largeValue, (byte) 'a');
+        PackedCacheStore store = new PackedCacheStore(directory, "test");
+        store.write("large", largeValue);
+        store.write("small", bytes("small"));
+        store.flush();
+        store.write("large", bytes("large"));
+        store.flush();
+
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".pack"));
+        assertThat(segments.length, is(1));
+        assertThat(segments[0].length() < largeValue.length, is(true));
+
+        store = new PackedCacheStore(directory, "test");
+        assertThat(read(store, "large"), is("large"));
+        assertThat(read(store, "small"), is("small"));
+    }
+
+    @Test
+    public void readsCompressedEntries() throws IOException {
+        File directory = folder.getRoot();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            sb.append("value");
+        }
+        String repeated = sb.toString();
+        PackedCacheStore store = new PackedCacheStore(directory, "test", true);
+        store.write("repeated", bytes(repeated));
+        store.write("short", bytes("a"));
+        store.flush();
+
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".pack"));
+        assertThat(segments[0].length() < repeated.length(), is(true));
+
+        store = new PackedCacheStore(directory, "test", true);
+        assertThat(read(store, "repeated"), is(repeated));
+        assertThat(read(store, "short"), is("a"));
+    }
+
+    @Test
+    public void readsEntriesAfterFlushOnSameInstance() throws IOException {
+        File directory = folder.getRoot();
+        PackedCacheStore store = new PackedCacheStore(directory, "test");
+        store.write("foo", bytes("first"));
+        store.flush();
+        InputStream pendingInput = store.read("foo");
+        assertThat(read(store, "foo"), is("first"));
+
+        store.write("foo", bytes("second"));
+        store.write("bar", bytes("other"));
+        store.flush();
+
+        assertThat(readFully(pendingInput), is("first"));
+        assertThat(read(store, "foo"), is("second"));
+        assertThat(read(store, "bar"), is("other"));
+    }
+
+    @Test
+    public void readsEntriesAfterCompactionOnSameInstance() throws IOException {
+        File directory = folder.getRoot();
+        byte[] largeValue = new byte[3 << 20];
+        Arrays.fill(largeValue, (byte) 'a');
+        PackedCacheStore store = new PackedCacheStore(directory, "test");
+        store.write("large", largeValue);
+        store.write("small", bytes("small"));
+        store.flush();
+        InputStream pendingInput = store.read("small");
+
+        store.write("large", bytes("large"));
+        store.flush();
+
+        assertThat(readFully(pendingInput), is("small"));
+        assertThat(read(store, "large"), is("large"));
+        assertThat(read(store, "small"), is("small"));
+    }
+
+    @Test
+    public void ignoresDataOfInterruptedFlush() throws IOException {
+        File directory = folder.getRoot();
+        PackedCacheStore store = new PackedCacheStore(directory, "test");
+        store.write("foo", bytes("foo-value"));
+        store.flush();
+        File segment = directory.listFiles((dir, name) -> name.endsWith(".pack"))[0];
+        try (OutputStream output = new FileOutputStream(segment, true)) {
+            output.write(bytes("garbage"));
+        }
+
+        store = new PackedCacheStore(directory, "test");
+        InputStream pendingInput = store.read("foo");
+        store.write("bar", bytes("bar-value"));
+        store.flush();
+
+        assertThat(readFully(pendingInput), is("foo-value"));
+        store = new PackedCacheStore(directory, "test");
+        assertThat(read(store, "foo"), is("foo-value"));
+        assertThat(read(store, "bar"), is("bar-value"));
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".pack"));
+        assertThat(segments.length, is(1));
+        assertThat(segments[0].length(), is((long) "foo-valuebar-value".length()));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(PackedCacheStore store, String key) throws IOException {
+        return readFully(store.read(key));
+    }
+
+    private static String readFully(InputStream source) throws IOException {
+        try (InputStream input = source) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            while (true) {
+                int bytesRead = input.read(buffer);
+                if (bytesRead < 0) {
+                    break;
+                }
+                output.write(buffer, 0, bytesRead);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -27,7 +27,11 @@ import java.util.List;
 import java.util.Map;
 import org.junit.Test;
 import org.teavm.model.BasicBlock;
+import org.teavm.model.FieldReference;
 import org.teavm.model.Instruction;
+import org.teavm.model.InvokeDynamicInstruction;
+import org.teavm.model.MethodDescriptor;
+import org.teavm.model.MethodHandle;
 import org.teavm.model.Program;
 import org.teavm.model.ValueType;
 import org.teavm.model.instructions.BinaryInstruction;
@@ -40,6 +44,7 @@ import org.teavm.model.instructions.IntegerConstantInstruction;
 import org.teavm.model.instructions.LongConstantInstruction;
 import org.teavm.model.instructions.NullConstantInstruction;
 import org.teavm.model.instructions.NumericOperandType;
+import org.teavm.model.instructions.PutFieldInstruction;
 import org.teavm.model.instructions.StringConstantInstruction;
 
 public class ProgramIOTest {
@@ -168,6 +173,54 @@ public class ProgramIOTest {
         assertThat(block.instructionCount(), is(4));
     }
 
+    @Test
+    public void putField() {
+        Program program = new Program();
+        BasicBlock block = program.createBasicBlock();
+        PutFieldInstruction putInsn = new PutFieldInstruction();
+        putInsn.setInstance(program.createVariable());
+        putInsn.setField(new FieldReference("foo.Bar", "baz"));
+        putInsn.setFieldType(ValueType.INTEGER);
+        putInsn.setValue(program.createVariable());
+        block.add(putInsn);
+        EmptyInstruction emptyInsn = new EmptyInstruction();
+        block.add(emptyInsn);
+
+        program = inputOutput(program);
+        block = program.basicBlockAt(0);
+
+        assertThat(block.instructionCount(), is(2));
+        putInsn = (PutFieldInstruction) block.getFirstInstruction();
+        assertThat(putInsn.getInstance().getIndex(), is(0));
+        assertThat(putInsn.getField().fieldName, is("baz"));
+        assertThat(putInsn.getFieldType().toString(), is(ValueType.INTEGER.toString()));
+        assertThat(putInsn.getValue().getIndex(), is(1));
+        assertThat(putInsn.getNext(), instanceOf(EmptyInstruction.class));
+    }
+
+    @Test
+    public void invokeDynamic() {
+        Program program = new Program();
+        BasicBlock block = program.createBasicBlock();
+        InvokeDynamicInstruction indyInsn = new InvokeDynamicInstruction();
+        indyInsn.setReceiver(program.createVariable());
+        indyInsn.setMethod(new MethodDescriptor("run", ValueType.INTEGER, ValueType.object("java.lang.Runnable")));
+        indyInsn.getArguments().add(program.createVariable());
+        indyInsn.setBootstrapMethod(MethodHandle.staticCaller("foo.Bootstrap", "bootstrap",
+                ValueType.object("java.lang.Object"), ValueType.object("java.lang.Object")));
+        block.add(indyInsn);
+
+        program = inputOutput(program);
+        block = program.basicBlockAt(0);
+
+        assertThat(block.instructionCount(), is(1));
+        indyInsn = (InvokeDynamicInstruction) block.getFirstInstruction();
+        assertThat(indyInsn.getInstance() == null, is(true));
+        assertThat(indyInsn.getArguments().size(), is(1));
+        assertThat(indyInsn.getBootstrapMethod().getName(), is("bootstrap"));
+        assertThat(indyInsn.getBootstrapMethod().getClassName(), is("foo.Bootstrap"));
+    }
+
     private Program inputOutput(Program program) {
         InMemorySymbolTable symbolTable = new InMemorySymbolTable();
         InMemorySymbolTable fileTable = new InMemorySymbolTable();
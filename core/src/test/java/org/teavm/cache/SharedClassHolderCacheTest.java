@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.cache;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderSource;
+
+public class SharedClassHolderCacheTest {
+    private Map<String, String> hashes = new HashMap<>();
+    private int parseCount;
+
+    @Test
+    public void sharesClassesBetweenBuilds() {
+        SharedClassHolderCache cache = new SharedClassHolderCache(10);
+        hashes.put("A", "1");
+        ClassHolder cls = cache.wrap(this::parse, hashes::get).get("A");
+        assertThat(cache.wrap(this::parse, hashes::get).get("A"), sameInstance(cls));
+        assertThat(parseCount, is(1));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    public void reparsesChangedClasses() {
+        SharedClassHolderCache cache = new SharedClassHolderCache(10);
+        hashes.put("A", "1");
+        ClassHolder cls = cache.wrap(this::parse, hashes::get).get("A");
+        hashes.put("A", "2");
+        assertThat(cache.wrap(this::parse, hashes::get).get("A"), not(sameInstance(cls)));
+        assertThat(parseCount, is(2));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedClasses() {
+        SharedClassHolderCache cache = new SharedClassHolderCache(2);
+        hashes.put("A", "1");
+        hashes.put("B", "1");
+        hashes.put("C", "1");
+        ClassHolderSource source = cache.wrap(this::parse, hashes::get);
+        source.get("A");
+        source.get("B");
+        cache.wrap(this::parse, hashes::get).get("A");
+        source.get("C");
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getEvictionCount(), is(1L));
+
+        source = cache.wrap(this::parse, hashes::get);
+        source.get("A");
+        source.get("B");
+        assertThat(parseCount, is(4));
+    }
+
+    @Test
+    public void doesNotCacheClassesWithoutHash() {
+        SharedClassHolderCache cache = new SharedClassHolderCache(10);
+        assertThat(cache.wrap(name -> null, hashes::get).get("A"), nullValue());
+        assertThat(cache.size(), is(0));
+    }
+
+    private ClassHolder parse(String name) {
+        ++parseCount;
+        return new ClassHolder(name);
+    }
+}
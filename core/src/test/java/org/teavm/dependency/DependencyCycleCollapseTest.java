@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.Test;
+import org.teavm.diagnostics.AccumulationDiagnostics;
+import org.teavm.model.MethodReference;
+import org.teavm.model.MutableClassHolderSource;
+import org.teavm.model.ValueType;
+
+public class DependencyCycleCollapseTest {
+    private static final int NODE_COUNT = 60;
+    private static final String[] TYPES = { "T0", "T1", "T2", "T3", "T4", "T5", "[LT1;", "[[LT2;", "[LT3;",
+            "java.lang.Class" };
+
+    @Test
+    public void collapsedCyclesGiveSameResult() {
+        for (int seed = 0; seed < 50; ++seed) {
+            Analysis expected = new Analysis(seed, Integer.MAX_VALUE);
+            Analysis actual = new Analysis(seed, 1);
+            assertEquals("Seed " + seed, 0, expected.collapsedNodeCount());
+            assertTrue("Seed " + seed, actual.collapsedNodeCount() > 0);
+            assertEquals("Seed " + seed, expected.reachableMethods(), actual.reachableMethods());
+            assertEquals("Seed " + seed, expected.nodeTypes(), actual.nodeTypes());
+        }
+    }
+
+    static class Analysis {
+        final DependencyChecker checker;
+        final List<DependencyNode> nodes = new ArrayList<>();
+        final Random random;
+
+        Analysis(int seed, int minCycleCollapseConnections) {
+            random = new Random(seed);
+            checker = new DependencyChecker(new MutableClassHolderSource(),
+                    DependencyCycleCollapseTest.class.getClassLoader(), null, new AccumulationDiagnostics());
+            checker.setMinCycleCollapseConnections(minCycleCollapseConnections);
+            for (int i = 0; i < NODE_COUNT; ++i) {
+                nodes.add(checker.createNode());
+            }
+
+            // Chains of unfiltered connections, closed into cycles from time to time
+            for (int i = 0; i < NODE_COUNT * 2; ++i) {
+                int from = random.nextInt(NODE_COUNT);
+                int to = random.nextInt(NODE_COUNT);
+                node(from).connect(node(to));
+                if (random.nextInt(4) == 0) {
+                    node(to).connect(node(from));
+                }
+            }
+
+            // Filtered exits from cycles
+            for (int i = 0; i < NODE_COUNT / 2; ++i) {
+                String prefix = random.nextBoolean() ? "T" : "[";
+                node(random.nextInt(NODE_COUNT)).connect(node(random.nextInt(NODE_COUNT)),
+                        type -> type.getName().startsWith(prefix));
+            }
+
+            // Array item and class value nodes, which get connected when array and class types reach nodes
+            for (int i = 0; i < NODE_COUNT / 4; ++i) {
+                node(random.nextInt(NODE_COUNT)).getArrayItem().connect(node(random.nextInt(NODE_COUNT)));
+                node(random.nextInt(NODE_COUNT)).getArrayItem().getArrayItem()
+                        .connect(node(random.nextInt(NODE_COUNT)).getArrayItem());
+                node(random.nextInt(NODE_COUNT)).getClassValueNode().connect(node(random.nextInt(NODE_COUNT)));
+            }
+
+            // Consumers that reach methods and add connections when they receive types
+            for (int i = 0; i < NODE_COUNT / 4; ++i) {
+                DependencyNode from = node(random.nextInt(NODE_COUNT));
+                DependencyNode to = node(random.nextInt(NODE_COUNT));
+                String trigger = randomType();
+                node(random.nextInt(NODE_COUNT)).addConsumer(type -> {
+                    checker.linkMethod(new MethodReference("Reached" + type.getName().replace('[', '_'),
+                            "reached", ValueType.VOID), null);
+                    if (type.getName().equals(trigger)) {
+                        from.connect(to);
+                    }
+                });
+            }
+
+            for (int i = 0; i < NODE_COUNT / 3; ++i) {
+                DependencyNode node = node(random.nextInt(NODE_COUNT));
+                switch (random.nextInt(3)) {
+                    case 1:
+                        node = node.getArrayItem();
+                        break;
+                    case 2:
+                        node = node.getClassValueNode();
+                        break;
+                }
+                node.propagate(checker.getType(randomType()));
+            }
+
+            checker.processDependencies();
+        }
+
+        private DependencyNode node(int index) {
+            return nodes.get(index);
+        }
+
+        private String randomType() {
+            return TYPES[random.nextInt(TYPES.length)];
+        }
+
+        int collapsedNodeCount() {
+            int count = 0;
+            for (DependencyNode node : checker.nodes) {
+                if (node.representative() != node) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        Set<String> reachableMethods() {
+            Set<String> result = new TreeSet<>();
+            for (MethodReference method : checker.getReachableMethods()) {
+                result.add(method.toString());
+            }
+            return result;
+        }
+
+        Map<String, String> nodeTypes() {
+            Map<String, String> result = new TreeMap<>();
+            for (int i = 0; i < nodes.size(); ++i) {
+                DependencyNode node = node(i);
+                result.put(i + "", sortedTypes(node));
+                result.put(i + "[", sortedTypes(node.getArrayItem()));
+                result.put(i + "[[", sortedTypes(node.getArrayItem().getArrayItem()));
+                result.put(i + "@", sortedTypes(node.getClassValueNode()));
+            }
+            return result;
+        }
+
+        private static String sortedTypes(DependencyNode node) {
+            String[] types = node.getTypes();
+            Arrays.sort(types);
+            return Arrays.toString(types);
+        }
+    }
+}
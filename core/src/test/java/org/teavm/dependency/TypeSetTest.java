@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class TypeSetTest {
+    @Test
+    public void singletonCopiedOnWrite() {
+        TypeSet singleton = new SingletonTypeSet(5);
+        TypeSet set = singleton.add(3);
+        assertNotSame(singleton, set);
+        assertArrayEquals(new int[] { 5 }, singleton.toArray());
+        assertArrayEquals(new int[] { 3, 5 }, set.toArray());
+    }
+
+    @Test
+    public void growsToChunkedSet() {
+        TypeSet set = new SingletonTypeSet(10000);
+        for (int i = 0; i < SortedArrayTypeSet.MAX_SIZE; ++i) {
+            set = set.add(i * 3);
+        }
+        assertTrue(set instanceof ChunkedTypeSet);
+        assertEquals(SortedArrayTypeSet.MAX_SIZE + 1, set.size());
+        assertTrue(set.contains(10000));
+        assertTrue(set.contains(93));
+        assertFalse(set.contains(94));
+        assertFalse(set.contains(100000));
+    }
+
+    @Test
+    public void poolSharesEqualSets() {
+        TypeSet first = new SingletonTypeSet(1).add(2).add(3);
+        TypeSet second = new SingletonTypeSet(3).add(1).add(2);
+        TypeSetPool pool = new TypeSetPool();
+        TypeSet shared = pool.intern(first);
+        assertSame(shared, pool.intern(second));
+        assertTrue(shared.shared);
+
+        TypeSet modified = shared.copy().add(4);
+        assertArrayEquals(new int[] { 1, 2, 3 }, shared.toArray());
+        assertArrayEquals(new int[] { 1, 2, 3, 4 }, modified.toArray());
+    }
+
+    @Test
+    public void matchesReferenceImplementation() {
+        Random random = new Random(0);
+        for (int attempt = 0; attempt < 50; ++attempt) {
+            int first = random.nextInt(5000);
+            TypeSet set = new SingletonTypeSet(first);
+            TreeSet<Integer> expected = new TreeSet<>();
+            expected.add(first);
+            int count = random.nextInt(100);
+            for (int i = 0; i < count; ++i) {
+                int type = random.nextInt(5000);
+                assertEquals(expected.contains(type), set.contains(type));
+                if (expected.add(type)) {
+                    set = set.add(type);
+                }
+            }
+            assertEquals(expected.size(), set.size());
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.toArray());
+        }
+    }
+}
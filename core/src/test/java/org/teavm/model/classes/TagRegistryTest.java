@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.model.classes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.teavm.model.AccessLevel;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassReader;
+import org.teavm.model.ElementModifier;
+import org.teavm.model.MutableClassHolderSource;
+
+public class TagRegistryTest {
+    private final MutableClassHolderSource classSource = new MutableClassHolderSource();
+
+    @Test
+    public void rangesOfSeveralRootsDoNotOverlap() {
+        createHierarchy();
+        TagRegistry registry = new TagRegistry(classSource);
+
+        List<String> roots = Arrays.asList("A", "B", "C");
+        for (String first : roots) {
+            TagRegistry.Range firstRange = singleRange(registry, first);
+            for (String second : roots) {
+                if (first.equals(second)) {
+                    continue;
+                }
+                TagRegistry.Range secondRange = singleRange(registry, second);
+                assertTrue(first + " overlaps " + second, firstRange.upper <= secondRange.lower
+                        || secondRange.upper <= firstRange.lower);
+            }
+        }
+    }
+
+    @Test
+    public void rangesMatchAssignability() {
+        createHierarchy();
+        TagRegistry registry = new TagRegistry(classSource);
+
+        for (String className : classSource.getClassNames()) {
+            if (classSource.get(className).hasModifier(ElementModifier.INTERFACE)) {
+                continue;
+            }
+            int tag = singleRange(registry, className).lower;
+            for (String typeName : classSource.getClassNames()) {
+                boolean inRange = false;
+                for (TagRegistry.Range range : registry.getRanges(typeName)) {
+                    if (tag >= range.lower && tag < range.upper) {
+                        inRange = true;
+                    }
+                }
+                assertEquals(className + " instanceof " + typeName, isAssignable(className, typeName), inRange);
+            }
+        }
+    }
+
+    @Test
+    public void interfaceImplementedByEveryRootHasRangePerRoot() {
+        createHierarchy();
+        TagRegistry registry = new TagRegistry(classSource);
+
+        List<TagRegistry.Range> ranges = registry.getRanges("I");
+        assertEquals(3, ranges.size());
+        for (int i = 1; i < ranges.size(); ++i) {
+            assertTrue(ranges.get(i - 1).upper <= ranges.get(i).lower);
+        }
+        assertFalse(registry.getRanges("J").isEmpty());
+    }
+
+    // A <- A1 <- A11, A <- A2 implements I; B implements I <- B1; C implements J, J extends I
+    private void createHierarchy() {
+        createInterface("I");
+        createInterface("J", "I");
+        createClass("A", null);
+        createClass("A1", "A");
+        createClass("A11", "A1");
+        createClass("A2", "A", "I");
+        createClass("B", null, "I");
+        createClass("B1", "B");
+        createClass("C", null, "J");
+    }
+
+    private void createClass(String name, String parent, String... interfaces) {
+        ClassHolder cls = new ClassHolder(name);
+        cls.setLevel(AccessLevel.PUBLIC);
+        cls.setParent(parent);
+        cls.getInterfaces().addAll(Arrays.asList(interfaces));
+        classSource.putClassHolder(cls);
+    }
+
+    private void createInterface(String name, String... interfaces) {
+        createClass(name, null, interfaces);
+        classSource.get(name).getModifiers().add(ElementModifier.INTERFACE);
+    }
+
+    private boolean isAssignable(String from, String to) {
+        if (from == null) {
+            return false;
+        }
+        if (from.equals(to)) {
+            return true;
+        }
+        ClassReader cls = classSource.get(from);
+        for (String iface : cls.getInterfaces()) {
+            if (isAssignable(iface, to)) {
+                return true;
+            }
+        }
+        return isAssignable(cls.getParent(), to);
+    }
+
+    private static TagRegistry.Range singleRange(TagRegistry registry, String className) {
+        List<TagRegistry.Range> ranges = registry.getRanges(className);
+        assertEquals(1, ranges.size());
+        return ranges.get(0);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.parsing;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+import org.teavm.common.Mapper;
+import org.teavm.model.ClassHolder;
+
+public class ClassPrefetcherTest {
+    private Map<String, Thread> parsingThreads = new ConcurrentHashMap<>();
+    private Mapper<String, ClassHolder> parser = name -> {
+        parsingThreads.put(name, Thread.currentThread());
+        return new ClassHolder(name);
+    };
+
+    @Test
+    public void keepsPrefetchingWhenPrefetchedClassesAreNotRequested() {
+        ClassPrefetcher prefetcher = new ClassPrefetcher(parser);
+        for (int i = 0; i < 5000; ++i) {
+            prefetcher.prefetch("A" + i);
+        }
+
+        assertThat(prefetcher.map("A4999").getName(), is("A4999"));
+        assertThat(parsingThreads.get("A4999"), not(Thread.currentThread()));
+        prefetcher.shutdown();
+    }
+
+    @Test
+    public void parsesOnDemandAfterShutdown() {
+        ClassPrefetcher prefetcher = new ClassPrefetcher(parser);
+        prefetcher.prefetch("A");
+        prefetcher.shutdown();
+        prefetcher.prefetch("B");
+
+        assertThat(prefetcher.map("A").getName(), is("A"));
+        assertThat(prefetcher.map("B").getName(), is("B"));
+        assertThat(parsingThreads.get("B"), is(Thread.currentThread()));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.vm;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.teavm.common.ParallelTasks;
+
+public class BuildStatisticsTest {
+    @Test
+    public void recordsPhasesInOrderOfCompletion() {
+        BuildStatistics statistics = new BuildStatistics();
+        try (BuildStatistics.Timer outer = statistics.startPhase("outer")) {
+            try (BuildStatistics.Timer inner = statistics.startPhase("inner")) {
+                // do nothing
+            }
+        }
+        assertThat(statistics.getPhases().size(), is(2));
+        assertThat(statistics.getPhases().get(0).getName(), is("inner"));
+        assertThat(statistics.getPhases().get(1).getName(), is("outer"));
+        assertTrue(statistics.getPhases().get(1).getTimeNanos() >= statistics.getPhases().get(0).getTimeNanos());
+    }
+
+    @Test
+    public void sumsOptimizationTimes() {
+        BuildStatistics statistics = new BuildStatistics();
+        statistics.addOptimizationTime("A", 10, true);
+        statistics.addOptimizationTime("A", 5, false);
+        statistics.addOptimizationTime("B", 1, false);
+        assertThat(statistics.getOptimizations().size(), is(2));
+        BuildStatistics.Optimization optimization = statistics.getOptimizations().get(0);
+        assertThat(optimization.getName(), is("A"));
+        assertThat(optimization.getTimeNanos(), is(15L));
+        assertThat(optimization.getInvocationCount(), is(2));
+        assertThat(optimization.getChangeCount(), is(1));
+    }
+
+    @Test
+    public void mergesOptimizationTimesOfTask() {
+        BuildStatistics statistics = new BuildStatistics();
+        statistics.addOptimizationTime("A", 1, false);
+        BuildStatistics.OptimizationTimes times = statistics.createOptimizationTimes();
+        times.add("B", 2, true);
+        times.add("A", 3, true);
+        assertThat(statistics.getOptimizations().size(), is(1));
+        times.merge();
+        assertThat(statistics.getOptimizations().size(), is(2));
+        BuildStatistics.Optimization optimization = statistics.getOptimizations().get(0);
+        assertThat(optimization.getName(), is("A"));
+        assertThat(optimization.getTimeNanos(), is(4L));
+        assertThat(optimization.getInvocationCount(), is(2));
+        assertThat(optimization.getChangeCount(), is(1));
+    }
+
+    @Test
+    public void countsAllocationsOfWorkerThreads() {
+        assumeTrue(ParallelTasks.currentThreadAllocatedBytes() >= 0);
+        BuildStatistics statistics = new BuildStatistics();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 64; ++i) {
+            items.add(i);
+        }
+        List<byte[]> arrays = Collections.synchronizedList(new ArrayList<>());
+        try (BuildStatistics.Timer timer = statistics.startPhase("allocation")) {
+            ParallelTasks.forEach(4, items, item -> arrays.add(new byte[256 * 1024]));
+        }
+        assertThat(arrays.size(), is(64));
+        assertTrue(statistics.getPhases().get(0).getAllocatedBytes() >= 64 * 256 * 1024);
+    }
+
+    @Test
+    public void writesJson() throws IOException {
+        BuildStatistics statistics = new BuildStatistics();
+        statistics.setCounter("a\"b", 2);
+        statistics.addCounter("a\"b", 3);
+        StringWriter writer = new StringWriter();
+        statistics.writeJson(writer);
+        assertThat(writer.toString(), containsString("\"phases\": [],"));
+        assertThat(writer.toString(), containsString("\"a\\\"b\": 5"));
+    }
+}
@@ -66,8 +66,8 @@ class JSAliasRenderer implements RendererListener {
                     continue;
                 }
                 if (first) {
-                    writer.append("c").ws().append("=").ws().appendClass(entry.getKey()).append(".prototype;")
-                            .softNewLine();
+                    writer.append("c").ws().append("=").ws().append("$rt_initClass(").appendClass(entry.getKey())
+                            .append(").prototype;").softNewLine();
                     first = false;
                 }
                 if (isKeyword(aliasEntry.getValue())) {
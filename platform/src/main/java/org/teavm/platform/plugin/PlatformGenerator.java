@@ -136,7 +136,8 @@ public class PlatformGenerator implements Generator, Injector, DependencyPlugin
         writer.append("return null;").softNewLine();
         writer.outdent().append("}").softNewLine();
 
-        writer.append("var $r").ws().append('=').ws().append("new ").append(cls).append("();").softNewLine();
+        writer.append("var $r").ws().append('=').ws().append("new ($rt_initClass(").append(cls).append("))();")
+                .softNewLine();
         writer.append(cls).append(".$$constructor$$($r);").softNewLine();
         writer.append("if").ws().append("($rt_suspending())").ws().append("{").indent().softNewLine();
         writer.append("return $rt_nativeThread().push($r);").softNewLine();
@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.samples.benchmark.teavm;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.browser.Performance;
+import org.teavm.jso.browser.Window;
+import org.teavm.jso.dom.html.HTMLDocument;
+import org.teavm.jso.dom.html.HTMLElement;
+
+/**
+ * Measures how long it takes to pass strings of different sizes from JavaScript to Java ($rt_str)
+ * and back ($rt_ustr). Every conversion in the Java to JavaScript direction uses a new string object,
+ * so that strings cached by native strings mode don't affect results.
+ */
+public final class StringConversionBenchmark {
+    private static final int[] SIZES = { 10, 100, 1000, 10000, 100000, 1000000 };
+    private static final int CHARACTERS_PER_MEASUREMENT = 4000000;
+    private static HTMLDocument document = Window.current().getDocument();
+    private static HTMLElement resultTableBody = document.getElementById("result-table-body");
+    private static int sizeIndex;
+
+    private StringConversionBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        measureNextSize();
+    }
+
+    private static void measureNextSize() {
+        if (sizeIndex >= SIZES.length) {
+            return;
+        }
+        int size = SIZES[sizeIndex++];
+        int iterations = Math.max(10, CHARACTERS_PER_MEASUREMENT / size);
+        JSObject jsString = createString(size);
+
+        // Warm up both conversions before measuring
+        measureToJava(jsString, iterations);
+        String javaString = toJava(jsString);
+        measureToJavaScript(javaString, iterations);
+
+        double toJavaTime = measureToJava(jsString, iterations);
+        double toJavaScriptTime = measureToJavaScript(javaString, iterations);
+        report(size, toJavaTime, toJavaScriptTime);
+
+        Window.setTimeout(() -> measureNextSize(), 0);
+    }
+
+    private static double measureToJava(JSObject jsString, int iterations) {
+        int checksum = 0;
+        double start = Performance.now();
+        for (int i = 0; i < iterations; ++i) {
+            checksum += toJava(jsString).length();
+        }
+        double end = Performance.now();
+        consume(checksum);
+        return (end - start) * 1000 / iterations;
+    }
+
+    private static double measureToJavaScript(String javaString, int iterations) {
+        char[] chars = javaString.toCharArray();
+        String[] strings = new String[Math.min(iterations, 100)];
+        int checksum = 0;
+        double time = 0;
+        for (int i = 0; i < iterations; i += strings.length) {
+            int count = Math.min(strings.length, iterations - i);
+            for (int j = 0; j < count; ++j) {
+                strings[j] = new String(chars);
+            }
+            double start = Performance.now();
+            for (int j = 0; j < count; ++j) {
+                checksum += toJavaScript(strings[j]);
+            }
+            time += Performance.now() - start;
+        }
+        consume(checksum);
+        return time * 1000 / iterations;
+    }
+
+    private static void report(int size, double toJavaTime, double toJavaScriptTime) {
+        HTMLElement row = document.createElement("tr");
+        resultTableBody.appendChild(row);
+        addCell(row, String.valueOf(size));
+        addCell(row, String.valueOf(toJavaTime));
+        addCell(row, String.valueOf(toJavaScriptTime));
+    }
+
+    private static void addCell(HTMLElement row, String text) {
+        HTMLElement cell = document.createElement("td");
+        row.appendChild(cell);
+        cell.appendChild(document.createTextNode(text));
+    }
+
+    @JSBody(params = "size", script = ""
+            + "var chunk = '';"
+            + "for (var i = 0; i < 1024; ++i) {"
+            + "chunk += String.fromCharCode(i % 7 == 0 ? 0x0400 + i % 256 : 0x61 + i % 26);"
+            + "}"
+            + "var result = '';"
+            + "while (result.length < size) {"
+            + "result += chunk;"
+            + "}"
+            + "return result.substring(0, size);")
+    private static native JSObject createString(int size);
+
+    @JSBody(params = "str", script = "return str;")
+    private static native String toJava(JSObject str);
+
+    @JSBody(params = "str", script = "return str.length;")
+    private static native int toJavaScript(String str);
+
+    @JSBody(params = "value", script = "window.stringConversionChecksum = value;")
+    private static native void consume(int value);
+}
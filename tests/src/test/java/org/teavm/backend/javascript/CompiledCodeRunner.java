@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.commons.io.IOUtils;
+import org.teavm.model.MethodReference;
+import org.teavm.model.ValueType;
+import org.teavm.vm.DirectoryBuildTarget;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+
+/**
+ * <p>Compiles <code>main</code> method of a class to JavaScript and runs it with node, so that tests can compare
+ * what compiled code prints with what the same method prints on JVM. HtmlUnit does not support features that
+ * some target options rely on, like <code>Map</code>, that's why node is used.</p>
+ */
+final class CompiledCodeRunner {
+    private static final ClassLoader CLASS_LOADER = CompiledCodeRunner.class.getClassLoader();
+    private static Boolean nodeAvailable;
+
+    private CompiledCodeRunner() {
+    }
+
+    static synchronized boolean isNodeAvailable() {
+        if (nodeAvailable == null) {
+            try {
+                Process process = new ProcessBuilder("node", "--version").redirectErrorStream(true).start();
+                IOUtils.toByteArray(process.getInputStream());
+                nodeAvailable = process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0;
+            } catch (IOException e) {
+                nodeAvailable = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                nodeAvailable = false;
+            }
+        }
+        return nodeAvailable;
+    }
+
+    static String runOnJvm(Class<?> mainClass) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        System.setOut(new PrintStream(buffer, true, "UTF-8"));
+        try {
+            mainClass.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            throw (Exception) e.getCause();
+        } finally {
+            System.setOut(oldOut);
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static String runCompiled(Class<?> mainClass, File directory, Consumer<JavaScriptTarget> configuration)
+            throws Exception {
+        JavaScriptTarget target = new JavaScriptTarget();
+        configuration.accept(target);
+        TeaVM vm = new TeaVMBuilder(target).setClassLoader(CLASS_LOADER).build();
+        vm.installPlugins();
+        vm.entryPoint("main", new MethodReference(mainClass.getName(), "main",
+                ValueType.parse(String[].class), ValueType.VOID))
+                .withValue(1, "[java.lang.String")
+                .withArrayValue(1, "java.lang.String")
+                .async();
+        directory.mkdirs();
+        vm.build(new DirectoryBuildTarget(directory), "classes.js");
+        assertTrue(vm.getProblemProvider().getSevereProblems().toString(),
+                vm.getProblemProvider().getSevereProblems().isEmpty());
+
+        File script = new File(directory, "all.js");
+        try (OutputStream output = new FileOutputStream(script)) {
+            try (InputStream input = CLASS_LOADER.getResourceAsStream("org/teavm/backend/javascript/runtime.js")) {
+                IOUtils.copy(input, output);
+            }
+            output.write('\n');
+            try (InputStream input = new FileInputStream(new File(directory, "classes.js"))) {
+                IOUtils.copy(input, output);
+            }
+            output.write("\nmain([]);\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Script is run as is, without a wrapping function, so that its "use strict" directive takes effect
+        Process process = new ProcessBuilder("node", "-e",
+                "globalThis.window = globalThis;"
+                + "require('vm').runInThisContext(require('fs').readFileSync(process.argv[1], 'utf8'));",
+                script.getAbsolutePath())
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(IOUtils.toByteArray(process.getInputStream()), StandardCharsets.UTF_8);
+        assertTrue("node timed out", process.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(output, 0, process.exitValue());
+        return output;
+    }
+}
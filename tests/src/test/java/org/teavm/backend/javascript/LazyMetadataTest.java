@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LazyMetadataTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void requireNode() {
+        assumeTrue(CompiledCodeRunner.isNodeAvailable());
+    }
+
+    @Test
+    public void typeChecksSeeObjectsWithPlaceholderPrototype() throws Exception {
+        String expected = CompiledCodeRunner.runOnJvm(LazyMetadataTestData.class);
+        String actual = CompiledCodeRunner.runCompiled(LazyMetadataTestData.class, folder.newFolder(), target -> {
+            target.setMinifying(false);
+            target.setLazyMetadata(true);
+        });
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void minifiedTypeChecksSeeObjectsWithPlaceholderPrototype() throws Exception {
+        String expected = CompiledCodeRunner.runOnJvm(LazyMetadataTestData.class);
+        String actual = CompiledCodeRunner.runCompiled(LazyMetadataTestData.class, folder.newFolder(), target -> {
+            target.setMinifying(true);
+            target.setLazyMetadata(true);
+        });
+        assertEquals(expected, actual);
+    }
+}
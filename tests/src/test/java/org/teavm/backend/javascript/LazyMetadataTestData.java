@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public final class LazyMetadataTestData {
+    private LazyMetadataTestData() {
+    }
+
+    public static void main(String[] args) {
+        // Objects are checked right after creation, before anything is read from their prototypes
+        Object sub = new Sub();
+        System.out.println("new Sub() instanceof Base: " + (sub instanceof Base));
+        System.out.println("new Sub() instanceof Sub: " + (sub instanceof Sub));
+        System.out.println("new Sub() instanceof Marker: " + (sub instanceof Marker));
+
+        Object first = new Other();
+        Object second = new Other();
+        System.out.println("first Other: " + ((Other) first).value());
+        System.out.println("second Other instanceof Other: " + (second instanceof Other));
+        System.out.println("second Other instanceof Base: " + (second instanceof Base));
+        System.out.println("second Other instanceof Sub: " + (second instanceof Sub));
+
+        Object list = new ArrayList<String>();
+        System.out.println("new ArrayList() instanceof AbstractList: " + (list instanceof AbstractList));
+        System.out.println("new ArrayList() instanceof List: " + (list instanceof List));
+        System.out.println("new ArrayList() instanceof Collection: " + (list instanceof Collection));
+        System.out.println("new ArrayList() instanceof Cloneable: " + (list instanceof Cloneable));
+
+        System.out.println("cast: " + describe(new Sub()));
+
+        try {
+            throw new SpecificException();
+        } catch (UnrelatedException e) {
+            System.out.println("caught as unrelated");
+        } catch (GeneralException e) {
+            System.out.println("caught as general: " + e.getClass().getName().endsWith("SpecificException"));
+        }
+    }
+
+    private static String describe(Object object) {
+        return ((Base) object).value();
+    }
+
+    interface Marker {
+    }
+
+    static class Base {
+        String value() {
+            return "base";
+        }
+    }
+
+    static class Sub extends Base implements Marker {
+        @Override
+        String value() {
+            return "sub";
+        }
+    }
+
+    static class Other extends Base {
+        @Override
+        String value() {
+            return "other";
+        }
+    }
+
+    static class GeneralException extends RuntimeException {
+    }
+
+    static class SpecificException extends GeneralException {
+    }
+
+    static class UnrelatedException extends RuntimeException {
+    }
+}
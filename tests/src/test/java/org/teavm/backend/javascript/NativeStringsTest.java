@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NativeStringsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void requireNode() {
+        assumeTrue(CompiledCodeRunner.isNodeAvailable());
+    }
+
+    @Test
+    public void nativeStringsBehaveAsJavaStrings() throws Exception {
+        String expected = CompiledCodeRunner.runOnJvm(NativeStringsTestData.class);
+        String actual = CompiledCodeRunner.runCompiled(NativeStringsTestData.class, folder.newFolder(), target -> {
+            target.setMinifying(false);
+            target.setNativeStrings(true);
+        });
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void minifiedNativeStringsBehaveAsJavaStrings() throws Exception {
+        String expected = CompiledCodeRunner.runOnJvm(NativeStringsTestData.class);
+        String actual = CompiledCodeRunner.runCompiled(NativeStringsTestData.class, folder.newFolder(), target -> {
+            target.setMinifying(true);
+            target.setNativeStrings(true);
+        });
+        assertEquals(expected, actual);
+    }
+}
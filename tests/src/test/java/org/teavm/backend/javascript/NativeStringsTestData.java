@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class NativeStringsTestData {
+    private NativeStringsTestData() {
+    }
+
+    public static void main(String[] args) {
+        String literal = "foobar";
+        String fromChars = new String(new char[] { 'f', 'o', 'o', 'b', 'a', 'r' });
+        String fromSubstring = "xfoobarx".substring(1, 7);
+        String fromBuilder = new StringBuilder("foo").append("bar").toString();
+        String fromValueOf = String.valueOf(new char[] { 'b', 'a', 'z' });
+
+        Map<String, Integer> map = new HashMap<>();
+        map.put(literal, 1);
+        map.put(fromValueOf, 2);
+        System.out.println("map.get: " + map.get(fromChars) + " " + map.get(fromSubstring) + " "
+                + map.get(fromBuilder) + " " + map.get("baz") + " " + map.get("qux"));
+        map.put(fromBuilder, 3);
+        System.out.println("map.size: " + map.size() + " " + map.get(literal));
+        System.out.println("map.keys: " + new ArrayList<>(map.keySet()).size());
+
+        Object object = fromChars;
+        Object other = fromSubstring;
+        System.out.println("Object.equals: " + object.equals(other) + " " + object.equals("foo"));
+        System.out.println("Object.hashCode: " + (object.hashCode() == literal.hashCode()) + " "
+                + object.hashCode());
+        System.out.println("Object.toString: " + object.toString());
+        System.out.println("Object.getClass: " + object.getClass().getName());
+        System.out.println("instanceof: " + (object instanceof String) + " " + (object instanceof CharSequence)
+                + " " + (object instanceof Comparable) + " " + (object instanceof Integer));
+
+        CharSequence sequence = fromBuilder;
+        System.out.println("CharSequence: " + sequence.length() + " " + sequence.charAt(3) + " "
+                + sequence.subSequence(1, 4) + " " + sequence.toString());
+
+        @SuppressWarnings("unchecked")
+        Comparable<Object> comparable = (Comparable<Object>) (Object) fromValueOf;
+        System.out.println("Comparable.compareTo: " + Integer.signum(comparable.compareTo(literal)) + " "
+                + comparable.compareTo("baz") + " " + Integer.signum(comparable.compareTo("bazz")));
+
+        List<String> list = new ArrayList<>(Arrays.asList("pear", fromChars, "apple", fromValueOf, "banana"));
+        Collections.sort(list);
+        System.out.println("sorted: " + list);
+        Object[] array = { "b", fromSubstring, "a" };
+        Arrays.sort(array);
+        System.out.println("sorted array: " + Arrays.toString(array));
+
+        System.out.println("identity: " + (System.identityHashCode(literal) != 0) + " "
+                + (System.identityHashCode(fromChars) == System.identityHashCode(fromChars)));
+        synchronized (fromChars) {
+            synchronized (fromChars) {
+                System.out.println("synchronized: " + Thread.holdsLock(fromChars));
+            }
+        }
+        System.out.println("released: " + Thread.holdsLock(fromChars));
+
+        StringBuilder switched = new StringBuilder();
+        for (String key : new String[] { fromChars, "baz", "other" }) {
+            switch (key) {
+                case "foobar":
+                    switched.append("F");
+                    break;
+                case "baz":
+                    switched.append("B");
+                    break;
+                default:
+                    switched.append("-");
+                    break;
+            }
+        }
+        System.out.println("switch: " + switched);
+        System.out.println("concat: " + literal.concat("!").toUpperCase() + " " + fromChars.indexOf("bar") + " "
+                + list.get(0).concat("|").concat(list.get(1)) + " " + fromChars.intern().equals(literal));
+    }
+}
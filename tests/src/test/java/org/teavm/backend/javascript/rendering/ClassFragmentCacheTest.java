@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.cache.DiskCachedClassHolderSource;
+import org.teavm.cache.DiskProgramCache;
+import org.teavm.cache.DiskRegularMethodNodeCache;
+import org.teavm.cache.FileSymbolTable;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderSource;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.util.ModelUtils;
+import org.teavm.parsing.ClassHashProvider;
+import org.teavm.parsing.ClasspathClassHolderSource;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+
+public class ClassFragmentCacheTest {
+    private static final String CHANGING = ClassFragmentCacheTestData.Changing.class.getName();
+    private static final String CHANGED_CHANGING = ClassFragmentCacheTestData.ChangedChanging.class.getName();
+    private static final ClassLoader CLASS_LOADER = ClassFragmentCacheTest.class.getClassLoader();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reusedCodeMatchesRenderingAfterClassChange() throws IOException {
+        Caches caches = new Caches(folder.getRoot());
+        ClassFragmentCache fragmentCache = new ClassFragmentCache();
+        String firstOutput = caches.build(new ChangingClassSource(false), fragmentCache);
+        String cachedOutput = caches.build(new ChangingClassSource(true), fragmentCache);
+
+        // Decompiler does not always produce the same AST for a method, so code is compared with rendering
+        // of the same AST nodes without fragment cache rather than with a build from scratch
+        String renderedOutput = caches.build(new ChangingClassSource(true), null);
+
+        assertEquals(renderedOutput, cachedOutput);
+        assertTrue(fragmentCache.getReusedCount() > 0);
+
+        // Replay of Reused fails on its second string, after its first string was checked successfully
+        assertEquals(stringIndex(firstOutput, "common"), stringIndex(cachedOutput, "common"));
+        assertNotEquals(stringIndex(firstOutput, "own"), stringIndex(cachedOutput, "own"));
+    }
+
+    private static int stringIndex(String output, String string) {
+        int poolStart = output.indexOf("$rt_stringPool([");
+        int poolEnd = output.indexOf("]);", poolStart);
+        String[] entries = output.substring(poolStart + "$rt_stringPool([".length(), poolEnd).split(",");
+        for (int i = 0; i < entries.length; ++i) {
+            if (entries[i].trim().equals("\"" + string + "\"")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static class Caches {
+        final FileSymbolTable symbolTable;
+        final FileSymbolTable fileTable;
+        DiskCachedClassHolderSource classSource;
+        DiskProgramCache programCache;
+        DiskRegularMethodNodeCache astCache;
+        final File directory;
+
+        Caches(File directory) {
+            this.directory = directory;
+            symbolTable = new FileSymbolTable(new File(directory, "symbols"));
+            fileTable = new FileSymbolTable(new File(directory, "files"));
+        }
+
+        String build(ChangingClassSource innerSource, ClassFragmentCache fragmentCache) throws IOException {
+            if (classSource == null) {
+                classSource = new DiskCachedClassHolderSource(directory, symbolTable, fileTable, innerSource,
+                        innerSource);
+                programCache = new DiskProgramCache(directory, symbolTable, fileTable, innerSource);
+                astCache = new DiskRegularMethodNodeCache(directory, symbolTable, fileTable, innerSource);
+            } else {
+                classSource.update(innerSource, innerSource);
+                programCache.update(innerSource);
+                astCache.update(innerSource);
+            }
+
+            JavaScriptTarget target = new JavaScriptTarget();
+            target.setMinifying(false);
+            target.setAstCache(astCache);
+            target.setFragmentCache(fragmentCache);
+            TeaVM vm = new TeaVMBuilder(target)
+                    .setClassLoader(CLASS_LOADER)
+                    .setClassSource(classSource)
+                    .build();
+            vm.setIncremental(true);
+            vm.setProgramCache(programCache);
+            vm.installPlugins();
+            vm.entryPoint(new MethodReference(ClassFragmentCacheTestData.class, "run", String.class));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            vm.build(fileName -> output, "classes.js");
+            assertTrue(vm.getProblemProvider().getSevereProblems().isEmpty());
+
+            programCache.flush();
+            astCache.flush();
+            classSource.flush();
+            symbolTable.flush();
+            fileTable.flush();
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static class ChangingClassSource implements ClassHolderSource, ClassHashProvider {
+        private final ClasspathClassHolderSource inner = new ClasspathClassHolderSource(CLASS_LOADER);
+        private final boolean changed;
+
+        ChangingClassSource(boolean changed) {
+            this.changed = changed;
+        }
+
+        @Override
+        public ClassHolder get(String name) {
+            if (!changed || !name.equals(CHANGING)) {
+                return inner.get(name);
+            }
+            ClassHolder replacement = inner.get(CHANGED_CHANGING);
+            ClassHolder cls = new ClassHolder(CHANGING);
+            cls.setParent(replacement.getParent());
+            cls.setLevel(replacement.getLevel());
+            cls.getModifiers().addAll(replacement.getModifiers());
+            for (MethodHolder method : replacement.getMethods()) {
+                cls.addMethod(ModelUtils.copyMethod(method));
+            }
+            return cls;
+        }
+
+        @Override
+        public String getContentHash(String className) {
+            if (changed && className.equals(CHANGING)) {
+                className = CHANGED_CHANGING;
+            }
+            return inner.getContentHash(className);
+        }
+    }
+}
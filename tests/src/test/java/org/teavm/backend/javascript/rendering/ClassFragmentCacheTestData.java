@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.backend.javascript.rendering;
+
+public final class ClassFragmentCacheTestData {
+    private ClassFragmentCacheTestData() {
+    }
+
+    public static String run() {
+        return Shared.text() + Changing.text() + Reused.common() + Reused.own();
+    }
+
+    static class Shared {
+        static String text() {
+            return "common";
+        }
+    }
+
+    static class Changing extends Shared {
+        static String text() {
+            return "changing";
+        }
+    }
+
+    /**
+     * Replaces {@link Changing} in the second build. Adds one more string to the pool, so that the new string
+     * of {@link Reused}, which is rendered later, gets another index.
+     */
+    static class ChangedChanging extends Shared {
+        static String text() {
+            return "changing" + Shared.text() + "extra";
+        }
+    }
+
+    static class Reused extends Changing {
+        static String common() {
+            return "common";
+        }
+
+        static String own() {
+            return "own";
+        }
+    }
+}
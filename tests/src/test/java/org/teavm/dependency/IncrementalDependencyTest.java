@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.cache.DiskCachedClassHolderSource;
+import org.teavm.cache.DiskProgramCache;
+import org.teavm.cache.FileSymbolTable;
+import org.teavm.model.ClassHolder;
+import org.teavm.model.ClassHolderSource;
+import org.teavm.model.MethodHolder;
+import org.teavm.model.MethodReference;
+import org.teavm.model.util.ModelUtils;
+import org.teavm.parsing.ClassHashProvider;
+import org.teavm.parsing.ClasspathClassHolderSource;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+import org.teavm.vm.TeaVMPhase;
+import org.teavm.vm.TeaVMProgressFeedback;
+import org.teavm.vm.TeaVMProgressListener;
+
+public class IncrementalDependencyTest {
+    private static final String DATA = IncrementalDependencyTestData.class.getName();
+    private static final String CALLER = IncrementalDependencyTestData.Caller.class.getName();
+    private static final String CHANGED_CALLER = IncrementalDependencyTestData.ChangedCaller.class.getName();
+    private static final ClassLoader CLASS_LOADER = IncrementalDependencyTest.class.getClassLoader();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void incrementalAnalysisMatchesCleanAnalysisAfterCallerChange() throws IOException {
+        File cacheDirectory = folder.getRoot();
+        FileSymbolTable symbolTable = new FileSymbolTable(new File(cacheDirectory, "symbols"));
+        FileSymbolTable fileTable = new FileSymbolTable(new File(cacheDirectory, "files"));
+        ChangingClassSource classSource = new ChangingClassSource();
+        DiskCachedClassHolderSource cachedClassSource = new DiskCachedClassHolderSource(cacheDirectory,
+                symbolTable, fileTable, classSource, classSource);
+        DiskProgramCache programCache = new DiskProgramCache(cacheDirectory, symbolTable, fileTable, classSource);
+
+        Map<String, String> firstResult = analyze(cachedClassSource, programCache);
+        programCache.flush();
+        cachedClassSource.flush();
+        symbolTable.flush();
+        fileTable.flush();
+
+        classSource = new ChangingClassSource();
+        classSource.changed = true;
+        cachedClassSource.update(classSource, classSource);
+        programCache.update(classSource);
+        Map<String, String> incrementalResult = analyze(cachedClassSource, programCache);
+
+        ChangingClassSource cleanClassSource = new ChangingClassSource();
+        cleanClassSource.changed = true;
+        Map<String, String> cleanResult = analyze(cleanClassSource, null);
+
+        String acceptParameter = IncrementalDependencyTestData.Callee.class.getName()
+                + ".accept(Ljava/lang/Object;)Ljava/lang/Object;#1";
+        assertEquals("[" + IncrementalDependencyTestData.First.class.getName() + "]",
+                firstResult.get(acceptParameter));
+        assertEquals("[" + IncrementalDependencyTestData.Second.class.getName() + "]",
+                cleanResult.get(acceptParameter));
+        assertEquals(cleanResult, incrementalResult);
+    }
+
+    private Map<String, String> analyze(ClassHolderSource classSource, DiskProgramCache programCache) {
+        TeaVM vm = new TeaVMBuilder(new JavaScriptTarget())
+                .setClassLoader(CLASS_LOADER)
+                .setClassSource(classSource)
+                .build();
+        if (programCache != null) {
+            vm.setIncremental(true);
+            vm.setProgramCache(programCache);
+        }
+        vm.setProgressListener(new TeaVMProgressListener() {
+            @Override
+            public TeaVMProgressFeedback phaseStarted(TeaVMPhase phase, int count) {
+                return phase == TeaVMPhase.DEPENDENCY_CHECKING
+                        ? TeaVMProgressFeedback.CONTINUE
+                        : TeaVMProgressFeedback.CANCEL;
+            }
+
+            @Override
+            public TeaVMProgressFeedback progressReached(int progress) {
+                return TeaVMProgressFeedback.CONTINUE;
+            }
+        });
+        vm.installPlugins();
+        vm.entryPoint(new MethodReference(IncrementalDependencyTestData.class, "run", void.class));
+        vm.build(fileName -> new ByteArrayOutputStream(), "out");
+
+        DependencyInfo dependencyInfo = vm.getDependencyInfo();
+        Map<String, String> result = new TreeMap<>();
+        for (MethodReference method : dependencyInfo.getReachableMethods()) {
+            if (!method.getClassName().startsWith(DATA)) {
+                continue;
+            }
+            MethodDependencyInfo methodDep = dependencyInfo.getMethod(method);
+            for (int i = 1; i < methodDep.getVariableCount(); ++i) {
+                result.put(method + "#" + i, sortedTypes(methodDep.getVariable(i)));
+            }
+            result.put(method + "#result", sortedTypes(methodDep.getResult()));
+            result.put(method + "#thrown", sortedTypes(methodDep.getThrown()));
+        }
+        return result;
+    }
+
+    private static String sortedTypes(ValueDependencyInfo value) {
+        if (value == null) {
+            return "[]";
+        }
+        String[] types = value.getTypes();
+        Arrays.sort(types);
+        return Arrays.toString(types);
+    }
+
+    static class ChangingClassSource implements ClassHolderSource, ClassHashProvider {
+        private final ClasspathClassHolderSource inner = new ClasspathClassHolderSource(CLASS_LOADER);
+        boolean changed;
+
+        @Override
+        public ClassHolder get(String name) {
+            if (!changed || !name.equals(CALLER)) {
+                return inner.get(name);
+            }
+            ClassHolder replacement = inner.get(CHANGED_CALLER);
+            ClassHolder cls = new ClassHolder(CALLER);
+            cls.setParent(replacement.getParent());
+            cls.setLevel(replacement.getLevel());
+            cls.getModifiers().addAll(replacement.getModifiers());
+            for (MethodHolder method : replacement.getMethods()) {
+                cls.addMethod(ModelUtils.copyMethod(method));
+            }
+            return cls;
+        }
+
+        @Override
+        public String getContentHash(String className) {
+            if (changed && className.equals(CALLER)) {
+                className = CHANGED_CALLER;
+            }
+            return inner.getContentHash(className);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+public final class IncrementalDependencyTestData {
+    private IncrementalDependencyTestData() {
+    }
+
+    public static void run() {
+        Caller.call();
+    }
+
+    static class Caller {
+        static void call() {
+            Callee.accept(new First());
+        }
+    }
+
+    /**
+     * Replaces {@link Caller} in the second build.
+     */
+    static class ChangedCaller {
+        static void call() {
+            Callee.accept(new Second());
+        }
+    }
+
+    static class Callee {
+        static Object accept(Object value) {
+            return value;
+        }
+    }
+
+    static class First {
+    }
+
+    static class Second {
+    }
+}
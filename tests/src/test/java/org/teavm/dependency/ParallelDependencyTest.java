@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.junit.Test;
+import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.model.MethodReference;
+import org.teavm.parsing.ClasspathClassHolderSource;
+import org.teavm.vm.BuildStatistics;
+import org.teavm.vm.TeaVM;
+import org.teavm.vm.TeaVMBuilder;
+import org.teavm.vm.TeaVMPhase;
+import org.teavm.vm.TeaVMProgressFeedback;
+import org.teavm.vm.TeaVMProgressListener;
+
+public class ParallelDependencyTest {
+    private static final ClassLoader CLASS_LOADER = ParallelDependencyTest.class.getClassLoader();
+
+    @Test
+    public void resultDoesNotDependOnThreadCount() {
+        Result sequential = analyze(1);
+        Result parallel = analyze(4);
+
+        assertTrue(parallel.propagationRounds > 0);
+        assertTrue(sequential.methods.size() > 400);
+        assertEquals(sequential.classes, parallel.classes);
+        assertEquals(sequential.methods, parallel.methods);
+        assertEquals(sequential.nodeTypes, parallel.nodeTypes);
+    }
+
+    private Result analyze(int threadCount) {
+        TeaVM vm = new TeaVMBuilder(new JavaScriptTarget())
+                .setClassLoader(CLASS_LOADER)
+                .setClassSource(new ClasspathClassHolderSource(CLASS_LOADER))
+                .build();
+        vm.setThreadCount(threadCount);
+        BuildStatistics statistics = new BuildStatistics();
+        vm.setStatistics(statistics);
+        vm.setProgressListener(new TeaVMProgressListener() {
+            @Override
+            public TeaVMProgressFeedback phaseStarted(TeaVMPhase phase, int count) {
+                return phase == TeaVMPhase.DEPENDENCY_CHECKING
+                        ? TeaVMProgressFeedback.CONTINUE
+                        : TeaVMProgressFeedback.CANCEL;
+            }
+
+            @Override
+            public TeaVMProgressFeedback progressReached(int progress) {
+                return TeaVMProgressFeedback.CONTINUE;
+            }
+        });
+        vm.installPlugins();
+        vm.entryPoint(new MethodReference(ParallelDependencyTestData.class, "run", String[].class, void.class));
+        vm.build(fileName -> new ByteArrayOutputStream(), "out");
+
+        Result result = new Result();
+        DependencyInfo dependencyInfo = vm.getDependencyInfo();
+        result.classes.addAll(dependencyInfo.getReachableClasses());
+        for (MethodReference method : dependencyInfo.getReachableMethods()) {
+            result.methods.add(method.toString());
+            MethodDependencyInfo methodDep = dependencyInfo.getMethod(method);
+            for (int i = 0; i < methodDep.getVariableCount(); ++i) {
+                result.nodeTypes.put(method + "#" + i, sortedTypes(methodDep.getVariable(i)));
+            }
+            result.nodeTypes.put(method + "#result", sortedTypes(methodDep.getResult()));
+            result.nodeTypes.put(method + "#thrown", sortedTypes(methodDep.getThrown()));
+        }
+        result.propagationRounds = statistics.getCounters().getOrDefault("dependency.propagationRounds", 0L);
+        return result;
+    }
+
+    private static String sortedTypes(ValueDependencyInfo value) {
+        if (value == null) {
+            return "[]";
+        }
+        String[] types = value.getTypes();
+        Arrays.sort(types);
+        String result = Arrays.toString(types);
+        if (value.hasArrayType()) {
+            result += " items: " + sortedTypes(value.getArrayItem());
+        }
+        return result;
+    }
+
+    static class Result {
+        final Set<String> classes = new TreeSet<>();
+        final Set<String> methods = new TreeSet<>();
+        final Map<String, String> nodeTypes = new TreeMap<>();
+        long propagationRounds;
+    }
+}
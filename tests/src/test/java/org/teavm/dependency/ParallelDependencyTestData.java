@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2017 Alexey Andreev.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.teavm.dependency;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+public final class ParallelDependencyTestData {
+    private ParallelDependencyTestData() {
+    }
+
+    public static void run(String[] args) {
+        List<Object> values = new ArrayList<>();
+        values.add(Integer.parseInt(args[0]));
+        values.add(Long.valueOf(args[1]));
+        values.add(Double.parseDouble(args[2]));
+        values.add(new StringBuilder(args[3]).reverse());
+        values.add(args.length > 4 ? new int[] { 1, 2 } : new Shape[] { new Circle(), new Square() });
+        values.add(Character.toUpperCase(args[0].charAt(0)));
+
+        Queue<Object> queue = args.length > 6 ? new ArrayDeque<>() : new PriorityQueue<>();
+        queue.add(Integer.toHexString(new Random().nextInt()));
+        queue.add(Long.parseLong(args[1], 16));
+        values.add(queue.poll());
+        BitSet bits = new BitSet();
+        bits.set(args.length);
+        values.add(bits);
+        values.add(args[0].split(",").length);
+
+        Map<String, Object> map = args.length > 5 ? new TreeMap<>() : args.length > 6 ? new HashMap<>()
+                : new LinkedHashMap<>();
+        for (Object value : values) {
+            map.put(String.valueOf(value), value);
+        }
+        Set<Shape> shapes = new HashSet<>();
+        List<Shape> shapeList = new LinkedList<>();
+        shapeList.add(new Circle());
+        shapeList.add(new Square());
+        shapes.addAll(shapeList);
+        Collections.sort(shapeList, (a, b) -> Double.compare(a.area(), b.area()));
+
+        Object[] array = values.toArray();
+        Arrays.sort(array, (a, b) -> a.toString().compareTo(b.toString()));
+        for (Iterator<Map.Entry<String, Object>> iter = map.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, Object> entry = iter.next();
+            if (entry.getValue() instanceof Number) {
+                iter.remove();
+            }
+        }
+
+        try {
+            Shape shape = (Shape) array[0];
+            System.out.println(shape.area());
+        } catch (ClassCastException | IndexOutOfBoundsException e) {
+            System.out.println(e.getMessage());
+        }
+        System.out.println(map + " " + shapes + " " + Arrays.toString(array));
+    }
+
+    interface Shape {
+        double area();
+    }
+
+    static class Circle implements Shape {
+        @Override
+        public double area() {
+            return Math.PI;
+        }
+    }
+
+    static class Square implements Shape {
+        @Override
+        public double area() {
+            return 1;
+        }
+    }
+}
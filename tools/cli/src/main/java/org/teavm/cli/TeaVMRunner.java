@@ -16,15 +16,20 @@
 package org.teavm.cli;
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URL;
 import java.net.URLClassLoader;
 import org.apache.commons.cli.*;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
+import org.teavm.common.ParallelTasks;
 import org.teavm.tooling.RuntimeCopyOperation;
 import org.teavm.tooling.TeaVMTargetType;
 import org.teavm.tooling.TeaVMTool;
 import org.teavm.tooling.TeaVMToolException;
+import org.teavm.vm.BuildStatistics;
 import org.teavm.vm.TeaVMOptimizationLevel;
 import org.teavm.vm.TeaVMPhase;
 import org.teavm.vm.TeaVMProgressFeedback;
@@ -35,6 +40,7 @@ public final class TeaVMRunner {
     private static long phaseStartTime;
     private static TeaVMPhase currentPhase;
     private static String[] classPath;
+    private static File statisticsFile;
 
     private TeaVMRunner() {
     }
@@ -63,11 +69,32 @@ public final class TeaVMRunner {
                 .withDescription("causes TeaVM to generate minimized JavaScript file")
                 .withLongOpt("minify")
                 .create("m"));
+        options.addOption(OptionBuilder
+                .withDescription("represents Java strings by JavaScript strings, so that strings are passed "
+                        + "to JavaScript and back without conversion")
+                .withLongOpt("native-strings")
+                .create());
+        options.addOption(OptionBuilder
+                .withDescription("causes long values to be represented by JavaScript BigInt values, "
+                        + "which requires an ECMAScript 2020 environment")
+                .withLongOpt("long-as-bigint")
+                .create());
+        options.addOption(OptionBuilder
+                .withDescription("causes class metadata to be set up on first use instead of at start-up, "
+                        + "which speeds up loading of large applications")
+                .withLongOpt("lazy-metadata")
+                .create());
         options.addOption(OptionBuilder
                 .withDescription("optimization level (1-3)")
                 .hasArg()
                 .withArgName("number")
                 .create("O"));
+        options.addOption(OptionBuilder
+                .withDescription("number of threads used to process methods (1 by default, 0 means all processors)")
+                .hasArg()
+                .withArgName("number")
+                .withLongOpt("threads")
+                .create());
         options.addOption(OptionBuilder
                 .withArgName("separate|merge|none")
                 .hasArg()
@@ -100,12 +127,27 @@ public final class TeaVMRunner {
                 .withDescription("Wait for command after compilation, in order to enable hot recompilation")
                 .withLongOpt("wait")
                 .create('w'));
+        options.addOption(OptionBuilder
+                .withArgName("port")
+                .hasArg()
+                .withDescription("Run as a daemon that keeps compiler state in memory between builds and "
+                        + "accepts commands ('build' or 'stop', one per connection) on the given local port. "
+                        + "Implies incremental build")
+                .withLongOpt("daemon")
+                .create());
         options.addOption(OptionBuilder
                 .withArgName("classpath")
                 .hasArgs()
                 .withDescription("Additional classpath that will be reloaded by TeaVM each time in wait mode")
                 .withLongOpt("classpath")
                 .create('p'));
+        options.addOption(OptionBuilder
+                .withArgName("file")
+                .hasArg()
+                .withDescription("Write timings, memory usage and counters of each build to the given file "
+                        + "in JSON format")
+                .withLongOpt("stats")
+                .create());
         options.addOption(OptionBuilder
                 .withLongOpt("wasm-version")
                 .withArgName("version")
@@ -167,6 +209,15 @@ public final class TeaVMRunner {
                     return;
             }
         }
+        if (commandLine.hasOption("native-strings")) {
+            tool.setNativeStrings(true);
+        }
+        if (commandLine.hasOption("long-as-bigint")) {
+            tool.setLongAsBigInt(true);
+        }
+        if (commandLine.hasOption("lazy-metadata")) {
+            tool.setLazyMetadata(true);
+        }
         if (commandLine.hasOption("mainpage")) {
             tool.setMainPageIncluded(true);
         }
@@ -200,6 +251,23 @@ public final class TeaVMRunner {
             }
         }
 
+        if (commandLine.hasOption("threads")) {
+            int threadCount;
+            try {
+                threadCount = Integer.parseInt(commandLine.getOptionValue("threads"));
+            } catch (NumberFormatException e) {
+                System.err.print("Wrong number of threads");
+                printUsage(options);
+                return;
+            }
+            if (threadCount < 0) {
+                System.err.print("Wrong number of threads");
+                printUsage(options);
+                return;
+            }
+            tool.setThreadCount(threadCount == 0 ? ParallelTasks.availableThreads() : threadCount);
+        }
+
         if (commandLine.hasOption('S')) {
             tool.setSourceMapsFileGenerated(true);
         }
@@ -215,7 +283,22 @@ public final class TeaVMRunner {
             classPath = commandLine.getOptionValues('p');
         }
 
+        if (commandLine.hasOption("stats")) {
+            statisticsFile = new File(commandLine.getOptionValue("stats"));
+        }
+
         boolean interactive = commandLine.hasOption('w');
+        int daemonPort = -1;
+        if (commandLine.hasOption("daemon")) {
+            try {
+                daemonPort = Integer.parseInt(commandLine.getOptionValue("daemon"));
+            } catch (NumberFormatException e) {
+                System.err.println("Wrong daemon port");
+                printUsage(options);
+                return;
+            }
+            tool.setIncremental(true);
+        }
         setupWasm(tool, commandLine, options);
 
         args = commandLine.getArgs();
@@ -230,7 +313,14 @@ public final class TeaVMRunner {
         tool.getProperties().putAll(System.getProperties());
         tool.setProgressListener(progressListener);
 
-        if (interactive) {
+        if (daemonPort >= 0) {
+            try {
+                runDaemon(tool, daemonPort);
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+                System.exit(-2);
+            }
+        } else if (interactive) {
             boolean quit = false;
             BufferedReader reader;
             try {
@@ -274,14 +364,75 @@ public final class TeaVMRunner {
         }
     }
 
+    private static void runDaemon(TeaVMTool tool, int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Waiting for commands on port " + serverSocket.getLocalPort());
+            boolean quit = false;
+            while (!quit) {
+                try (Socket socket = serverSocket.accept()) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                            "UTF-8"));
+                    Writer writer = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+                    String line = reader.readLine();
+                    String command = line != null ? line.trim() : "";
+                    switch (command) {
+                        case "build":
+                            writer.write(daemonBuild(tool) + "\n");
+                            break;
+                        case "stop":
+                            quit = true;
+                            writer.write("stopped\n");
+                            break;
+                        default:
+                            writer.write("unrecognized command\n");
+                            break;
+                    }
+                    writer.flush();
+                } catch (IOException e) {
+                    e.printStackTrace(System.err);
+                }
+            }
+        }
+    }
+
+    private static String daemonBuild(TeaVMTool tool) {
+        try {
+            build(tool);
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            return "failed " + e.getMessage();
+        }
+        if (tool.wasCancelled()) {
+            return "cancelled";
+        }
+        if (!tool.getProblemProvider().getSevereProblems().isEmpty()) {
+            return "failed with errors";
+        }
+        return "ok " + ((System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
     private static void build(TeaVMTool tool) throws TeaVMToolException {
         resetClassLoader(tool);
         currentPhase = null;
         startTime = System.currentTimeMillis();
         phaseStartTime = System.currentTimeMillis();
+        if (statisticsFile != null) {
+            tool.setStatistics(new BuildStatistics());
+        }
         tool.generate();
         reportPhaseComplete();
         System.out.println("Build complete for " + ((System.currentTimeMillis() - startTime) / 1000.0) + " seconds");
+        if (statisticsFile != null) {
+            writeStatistics(tool.getStatistics());
+        }
+    }
+
+    private static void writeStatistics(BuildStatistics statistics) throws TeaVMToolException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(statisticsFile), "UTF-8")) {
+            statistics.writeJson(writer);
+        } catch (IOException e) {
+            throw new TeaVMToolException("Error writing build statistics", e);
+        }
     }
 
     private static void setupWasm(TeaVMTool tool, CommandLine commandLine, Options options) {
@@ -34,6 +34,7 @@ import java.util.Properties;
 import java.util.Set;
 import org.apache.commons.io.IOUtils;
 import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.backend.javascript.rendering.ClassFragmentCache;
 import org.teavm.backend.javascript.rendering.RenderingManager;
 import org.teavm.backend.wasm.WasmTarget;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
@@ -41,6 +42,7 @@ import org.teavm.cache.DiskCachedClassHolderSource;
 import org.teavm.cache.DiskProgramCache;
 import org.teavm.cache.DiskRegularMethodNodeCache;
 import org.teavm.cache.FileSymbolTable;
+import org.teavm.cache.SharedClassHolderCache;
 import org.teavm.debugging.information.DebugInformation;
 import org.teavm.debugging.information.DebugInformationBuilder;
 import org.teavm.dependency.DependencyInfo;
@@ -54,9 +56,11 @@ import org.teavm.model.MethodReader;
 import org.teavm.model.MethodReference;
 import org.teavm.model.PreOptimizingClassHolderSource;
 import org.teavm.model.ProgramReader;
+import org.teavm.parsing.ClassHashProvider;
 import org.teavm.parsing.ClasspathClassHolderSource;
 import org.teavm.tooling.sources.SourceFileProvider;
 import org.teavm.tooling.sources.SourceFilesCopier;
+import org.teavm.vm.BuildStatistics;
 import org.teavm.vm.BuildTarget;
 import org.teavm.vm.DirectoryBuildTarget;
 import org.teavm.vm.TeaVM;
@@ -72,6 +76,9 @@ public class TeaVMTool implements BaseTeaVMTool {
     private TeaVMTargetType targetType = TeaVMTargetType.JAVASCRIPT;
     private String targetFileName = "";
     private boolean minifying = true;
+    private boolean nativeStrings;
+    private boolean longAsBigInt;
+    private boolean lazyMetadata;
     private String mainClass;
     private RuntimeCopyOperation runtime = RuntimeCopyOperation.SEPARATE;
     private Properties properties = new Properties();
@@ -89,12 +96,17 @@ public class TeaVMTool implements BaseTeaVMTool {
     private DiskCachedClassHolderSource cachedClassSource;
     private DiskProgramCache programCache;
     private DiskRegularMethodNodeCache astCache;
+    private ClassFragmentCache fragmentCache;
     private FileSymbolTable symbolTable;
     private FileSymbolTable fileTable;
+    private File warmCacheDirectory;
+    private SharedClassHolderCache sharedClassCache;
     private boolean cancelled;
     private TeaVMProgressListener progressListener;
+    private BuildStatistics statistics;
     private TeaVM vm;
     private TeaVMOptimizationLevel optimizationLevel = TeaVMOptimizationLevel.SIMPLE;
+    private int threadCount = 1;
     private List<SourceFileProvider> sourceFileProviders = new ArrayList<>();
     private DebugInformationBuilder debugEmitter;
     private JavaScriptTarget javaScriptTarget;
@@ -127,6 +139,30 @@ public class TeaVMTool implements BaseTeaVMTool {
         this.minifying = minifying;
     }
 
+    public boolean isNativeStrings() {
+        return nativeStrings;
+    }
+
+    public void setNativeStrings(boolean nativeStrings) {
+        this.nativeStrings = nativeStrings;
+    }
+
+    public boolean isLongAsBigInt() {
+        return longAsBigInt;
+    }
+
+    public void setLongAsBigInt(boolean longAsBigInt) {
+        this.longAsBigInt = longAsBigInt;
+    }
+
+    public boolean isLazyMetadata() {
+        return lazyMetadata;
+    }
+
+    public void setLazyMetadata(boolean lazyMetadata) {
+        this.lazyMetadata = lazyMetadata;
+    }
+
     public boolean isIncremental() {
         return incremental;
     }
@@ -238,6 +274,14 @@ public class TeaVMTool implements BaseTeaVMTool {
         this.optimizationLevel = optimizationLevel;
     }
 
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public ClassLoader getClassLoader() {
         return classLoader;
     }
@@ -255,6 +299,25 @@ public class TeaVMTool implements BaseTeaVMTool {
         this.wasmVersion = wasmVersion;
     }
 
+    public SharedClassHolderCache getSharedClassCache() {
+        return sharedClassCache;
+    }
+
+    public void setSharedClassCache(SharedClassHolderCache sharedClassCache) {
+        this.sharedClassCache = sharedClassCache;
+    }
+
+    public BuildStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Specifies where to collect timings and counters of the next build. By default nothing is collected.
+     */
+    public void setStatistics(BuildStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     public void setProgressListener(TeaVMProgressListener progressListener) {
         this.progressListener = progressListener;
     }
@@ -325,15 +388,14 @@ public class TeaVMTool implements BaseTeaVMTool {
     private TeaVMTarget prepareJavaScriptTarget() {
         javaScriptTarget = new JavaScriptTarget();
         javaScriptTarget.setMinifying(minifying);
+        javaScriptTarget.setNativeStrings(nativeStrings);
+        javaScriptTarget.setLongAsBigInt(longAsBigInt);
+        javaScriptTarget.setLazyMetadata(lazyMetadata);
 
         debugEmitter = debugInformationGenerated || sourceMapsFileGenerated
                 ? new DebugInformationBuilder() : null;
         javaScriptTarget.setDebugEmitter(debugEmitter);
 
-        if (incremental) {
-            javaScriptTarget.setAstCache(astCache);
-        }
-
         return javaScriptTarget;
     }
 
@@ -347,33 +409,38 @@ public class TeaVMTool implements BaseTeaVMTool {
     }
 
     public void generate() throws TeaVMToolException {
+        ClasspathClassHolderSource innerClassSource = null;
         try {
             cancelled = false;
             log.info("Building JavaScript file");
             TeaVMBuilder vmBuilder = new TeaVMBuilder(prepareTarget());
+            innerClassSource = new ClasspathClassHolderSource(classLoader, true);
             if (incremental) {
-                cacheDirectory.mkdirs();
-                symbolTable = new FileSymbolTable(new File(cacheDirectory, "symbols"));
-                fileTable = new FileSymbolTable(new File(cacheDirectory, "files"));
-                ClasspathClassHolderSource innerClassSource = new ClasspathClassHolderSource(classLoader);
-                ClassHolderSource classSource = new PreOptimizingClassHolderSource(innerClassSource);
-                cachedClassSource = new DiskCachedClassHolderSource(cacheDirectory, symbolTable, fileTable,
-                        classSource, innerClassSource);
-                programCache = new DiskProgramCache(cacheDirectory, symbolTable, fileTable, innerClassSource);
+                ClassHolderSource classSource = shareClasses(new PreOptimizingClassHolderSource(innerClassSource),
+                        innerClassSource);
+                if (cacheDirectory.equals(warmCacheDirectory)) {
+                    cachedClassSource.update(classSource, innerClassSource);
+                    programCache.update(innerClassSource);
+                    if (astCache != null) {
+                        astCache.update(innerClassSource);
+                    }
+                } else {
+                    openCaches(classSource, innerClassSource);
+                }
 
                 if (targetType == TeaVMTargetType.JAVASCRIPT) {
-                    astCache = new DiskRegularMethodNodeCache(cacheDirectory, symbolTable, fileTable, innerClassSource);
-                }
-                try {
-                    symbolTable.update();
-                    fileTable.update();
-                } catch (IOException e) {
-                    log.info("Cache is missing");
+                    if (astCache == null) {
+                        astCache = new DiskRegularMethodNodeCache(cacheDirectory, symbolTable, fileTable,
+                                innerClassSource);
+                        fragmentCache = new ClassFragmentCache();
+                    }
+                    javaScriptTarget.setAstCache(astCache);
+                    javaScriptTarget.setFragmentCache(fragmentCache);
                 }
                 vmBuilder.setClassLoader(classLoader).setClassSource(cachedClassSource);
             } else {
-                vmBuilder.setClassLoader(classLoader).setClassSource(new PreOptimizingClassHolderSource(
-                        new ClasspathClassHolderSource(classLoader)));
+                vmBuilder.setClassLoader(classLoader).setClassSource(shareClasses(
+                        new PreOptimizingClassHolderSource(innerClassSource), innerClassSource));
             }
             vm = vmBuilder.build();
             if (progressListener != null) {
@@ -384,6 +451,8 @@ public class TeaVMTool implements BaseTeaVMTool {
             vm.setProgramCache(programCache);
             vm.setIncremental(incremental);
             vm.setOptimizationLevel(optimizationLevel);
+            vm.setThreadCount(threadCount);
+            vm.setStatistics(statistics);
 
             vm.installPlugins();
             for (ClassHolderTransformer transformer : transformers) {
@@ -424,6 +493,8 @@ public class TeaVMTool implements BaseTeaVMTool {
             }
             BuildTarget buildTarget = new DirectoryBuildTarget(targetDirectory);
             String outputName = getResolvedTargetFileName();
+            long sharedCacheHits = sharedClassCache != null ? sharedClassCache.getHitCount() : 0;
+            long sharedCacheMisses = sharedClassCache != null ? sharedClassCache.getMissCount() : 0;
             vm.build(buildTarget, outputName);
             if (vm.wasCancelled()) {
                 log.info("Build cancelled");
@@ -431,6 +502,22 @@ public class TeaVMTool implements BaseTeaVMTool {
                 return;
             }
 
+            if (sharedClassCache != null) {
+                log.debug("Shared class cache: " + sharedClassCache.size() + " classes, "
+                        + sharedClassCache.getHitCount() + " hits, " + sharedClassCache.getMissCount() + " misses, "
+                        + sharedClassCache.getEvictionCount() + " evictions");
+                if (statistics != null) {
+                    statistics.setCounter("sharedClassCache.hits", sharedClassCache.getHitCount() - sharedCacheHits);
+                    statistics.setCounter("sharedClassCache.misses",
+                            sharedClassCache.getMissCount() - sharedCacheMisses);
+                }
+            }
+
+            if (fragmentCache != null && targetType == TeaVMTargetType.JAVASCRIPT) {
+                log.debug("Rendered code cache: " + fragmentCache.getReusedCount() + " classes reused, "
+                        + fragmentCache.getRenderedCount() + " classes rendered");
+            }
+
             ProblemProvider problemProvider = vm.getProblemProvider();
             if (problemProvider.getProblems().isEmpty()) {
                 log.info("Output file successfully built");
@@ -462,6 +549,44 @@ public class TeaVMTool implements BaseTeaVMTool {
             }
         } catch (IOException e) {
             throw new TeaVMToolException("IO error occurred", e);
+        } finally {
+            if (innerClassSource != null) {
+                innerClassSource.stopPrefetching();
+            }
+        }
+    }
+
+    private void openCaches(ClassHolderSource classSource, ClasspathClassHolderSource innerClassSource) {
+        warmCacheDirectory = null;
+        cacheDirectory.mkdirs();
+        symbolTable = new FileSymbolTable(new File(cacheDirectory, "symbols"));
+        fileTable = new FileSymbolTable(new File(cacheDirectory, "files"));
+        try {
+            symbolTable.update();
+            fileTable.update();
+        } catch (IOException e) {
+            log.info("Cache is missing");
+            deleteCacheEntries();
+        }
+        cachedClassSource = new DiskCachedClassHolderSource(cacheDirectory, symbolTable, fileTable,
+                classSource, innerClassSource);
+        programCache = new DiskProgramCache(cacheDirectory, symbolTable, fileTable, innerClassSource);
+        astCache = null;
+        fragmentCache = null;
+        warmCacheDirectory = cacheDirectory;
+    }
+
+    private ClassHolderSource shareClasses(ClassHolderSource classSource, ClassHashProvider hashProvider) {
+        return sharedClassCache != null ? sharedClassCache.wrap(classSource, hashProvider) : classSource;
+    }
+
+    private void deleteCacheEntries() {
+        // Cache entries refer to symbols by their indexes, so they are useless without symbol tables
+        File[] files = cacheDirectory.listFiles((dir, name) -> name.contains(".pack"));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
         }
     }
 
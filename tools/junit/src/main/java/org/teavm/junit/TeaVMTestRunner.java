@@ -50,6 +50,7 @@ import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.InitializationError;
 import org.teavm.backend.javascript.JavaScriptTarget;
+import org.teavm.cache.SharedClassHolderCache;
 import org.teavm.callgraph.CallGraph;
 import org.teavm.diagnostics.DefaultProblemTextConsumer;
 import org.teavm.diagnostics.Problem;
@@ -79,6 +80,7 @@ public class TeaVMTestRunner extends Runner implements Filterable {
     private ClassLoader classLoader;
     private Description suiteDescription;
     private static Map<ClassLoader, ClassHolderSource> classSources = new WeakHashMap<>();
+    private static SharedClassHolderCache sharedClassCache = new SharedClassHolderCache(10000);
     private File outputDir;
     private TestAdapter testAdapter = new JUnitTestAdapter();
     private Map<Method, Description> descriptions = new HashMap<>();
@@ -477,8 +479,10 @@ public class TeaVMTestRunner extends Runner implements Filterable {
     }
 
     private static ClassHolderSource getClassSource(ClassLoader classLoader) {
-        return classSources.computeIfAbsent(classLoader, cl -> new PreOptimizingClassHolderSource(
-                new ClasspathClassHolderSource(classLoader)));
+        return classSources.computeIfAbsent(classLoader, cl -> {
+            ClasspathClassHolderSource classSource = new ClasspathClassHolderSource(classLoader);
+            return sharedClassCache.wrap(new PreOptimizingClassHolderSource(classSource), classSource);
+        });
     }
 
     @Override
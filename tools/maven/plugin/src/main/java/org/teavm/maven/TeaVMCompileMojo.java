@@ -16,6 +16,10 @@
 package org.teavm.maven;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.List;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -25,6 +29,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.teavm.backend.wasm.render.WasmBinaryVersion;
+import org.teavm.cache.SharedClassHolderCache;
 import org.teavm.tooling.ClassAlias;
 import org.teavm.tooling.MethodAlias;
 import org.teavm.tooling.RuntimeCopyOperation;
@@ -33,12 +38,15 @@ import org.teavm.tooling.TeaVMTool;
 import org.teavm.tooling.TeaVMToolException;
 import org.teavm.tooling.sources.DirectorySourceFileProvider;
 import org.teavm.tooling.sources.SourceFileProvider;
+import org.teavm.vm.BuildStatistics;
 import org.teavm.vm.TeaVMOptimizationLevel;
 
 @Mojo(name = "compile", requiresDependencyResolution = ResolutionScope.COMPILE_PLUS_RUNTIME,
         requiresDependencyCollection = ResolutionScope.COMPILE_PLUS_RUNTIME,
         defaultPhase = LifecyclePhase.PROCESS_CLASSES)
 public class TeaVMCompileMojo extends AbstractTeaVMMojo {
+    private static final SharedClassHolderCache sharedClassCache = new SharedClassHolderCache(10000);
+
     @Parameter(defaultValue = "${project.build.directory}/javascript")
     private File targetDirectory;
 
@@ -54,6 +62,15 @@ public class TeaVMCompileMojo extends AbstractTeaVMMojo {
     @Parameter
     private boolean mainPageIncluded;
 
+    @Parameter
+    private boolean nativeStrings;
+
+    @Parameter
+    private boolean longAsBigInt;
+
+    @Parameter
+    private boolean lazyMetadata;
+
     @Parameter
     private ClassAlias[] classAliases;
 
@@ -69,6 +86,9 @@ public class TeaVMCompileMojo extends AbstractTeaVMMojo {
     @Parameter
     private TeaVMOptimizationLevel optimizationLevel = TeaVMOptimizationLevel.SIMPLE;
 
+    @Parameter(property = "teavm.threadCount", defaultValue = "1")
+    private int threadCount;
+
     @Parameter
     private TeaVMTargetType targetType = TeaVMTargetType.JAVASCRIPT;
 
@@ -80,6 +100,9 @@ public class TeaVMCompileMojo extends AbstractTeaVMMojo {
     @Parameter
     private WasmBinaryVersion wasmVersion = WasmBinaryVersion.V_0xD;
 
+    @Parameter(property = "teavm.statisticsFile")
+    private File statisticsFile;
+
     @Override
     protected File getTargetDirectory() {
         return targetDirectory;
@@ -93,11 +116,15 @@ public class TeaVMCompileMojo extends AbstractTeaVMMojo {
         try {
             tool.setMainClass(mainClass);
             tool.setMainPageIncluded(mainPageIncluded);
+            tool.setNativeStrings(nativeStrings);
+            tool.setLongAsBigInt(longAsBigInt);
+            tool.setLazyMetadata(lazyMetadata);
             tool.setRuntime(runtime);
             if (!targetFileName.isEmpty()) {
                 tool.setTargetFileName(targetFileName);
             }
             tool.setOptimizationLevel(optimizationLevel);
+            tool.setThreadCount(threadCount);
             if (classAliases != null) {
                 tool.getClassAliases().addAll(Arrays.asList(classAliases));
             }
@@ -107,7 +134,12 @@ public class TeaVMCompileMojo extends AbstractTeaVMMojo {
             tool.setCacheDirectory(cacheDirectory);
             tool.setTargetType(targetType);
             tool.setWasmVersion(wasmVersion);
+            tool.setSharedClassCache(sharedClassCache);
+            tool.setStatistics(statisticsFile != null ? new BuildStatistics() : null);
             tool.generate();
+            if (statisticsFile != null) {
+                writeStatistics(tool.getStatistics());
+            }
             if (stopOnErrors && !tool.getProblemProvider().getSevereProblems().isEmpty()) {
                 throw new MojoExecutionException("Build error");
             }
@@ -118,6 +150,15 @@ public class TeaVMCompileMojo extends AbstractTeaVMMojo {
         }
     }
 
+    private void writeStatistics(BuildStatistics statistics) throws TeaVMToolException {
+        statisticsFile.getParentFile().mkdirs();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(statisticsFile), "UTF-8")) {
+            statistics.writeJson(writer);
+        } catch (IOException e) {
+            throw new TeaVMToolException("Error writing build statistics", e);
+        }
+    }
+
     @Override
     protected void addSourceProviders(List<SourceFileProvider> providers) {
         providers.add(new DirectorySourceFileProvider(sourceDirectory));